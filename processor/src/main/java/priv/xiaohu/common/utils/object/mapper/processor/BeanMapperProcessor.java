@@ -0,0 +1,325 @@
+package priv.xiaohu.common.utils.object.mapper.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>为标记了{@code priv.xiaohu.common.utils.object.mapper.BeanMapper}的接口或抽象类生成实现类</p>
+ * <p>每个抽象方法声明一对(原始类, 目标类)：{@code T map(S source)}创建新的目标对象，
+ * {@code T/void map(S source, T target)}复制到已有的目标对象。
+ * 目标类的每个setter按属性名匹配原始类的getter(getX或boolean的isX)，生成直接调用的代码；
+ * 包装类型复制到基本类型时先判断null，为null时保留目标对象原来的值</p>
+ * <p>以下情况在编译时报错，不生成实现类：目标属性在原始类中没有getter且没有在ignore中声明，
+ * getter的返回类型不能赋值给setter的参数类型，ignore中的属性在所有目标类中都不存在，方法的形式不符合上面两种</p>
+ * <p>处理器按注解的全类名识别注解，不依赖包含注解的工具包</p>
+ *
+ * @author zxh
+ */
+@SupportedAnnotationTypes(BeanMapperProcessor.BEAN_MAPPER)
+public class BeanMapperProcessor extends AbstractProcessor {
+
+	static final String BEAN_MAPPER = "priv.xiaohu.common.utils.object.mapper.BeanMapper";
+
+	private Elements elements;
+	private Types types;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		elements = processingEnv.getElementUtils();
+		types = processingEnv.getTypeUtils();
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				generate(element);
+			}
+		}
+		return true;
+	}
+
+	private void generate(Element element) {
+		final boolean isInterface = element.getKind() == ElementKind.INTERFACE;
+		if (!isInterface && !(element.getKind() == ElementKind.CLASS && element.getModifiers().contains(Modifier.ABSTRACT))) {
+			error("@BeanMapper只能标记在接口或抽象类上", element);
+			return;
+		}
+		final TypeElement mapper = (TypeElement) element;
+		if (!mapper.getTypeParameters().isEmpty()) {
+			error("@BeanMapper不支持带类型参数的接口或抽象类", mapper);
+			return;
+		}
+		if (mapper.getModifiers().contains(Modifier.PRIVATE)
+				|| (!isInterface && mapper.getNestingKind().isNested() && !mapper.getModifiers().contains(Modifier.STATIC))) {
+			error("@BeanMapper标记的类不能是private或非静态的内部类", mapper);
+			return;
+		}
+		final Set<String> ignore = ignored(mapper);
+		final Set<String> targetProperties = new HashSet<>();
+		final StringBuilder methods = new StringBuilder();
+		boolean valid = true;
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(mapper))) {
+			if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+				valid &= writeMethod(mapper, method, ignore, targetProperties, methods);
+			}
+		}
+		for (String name : ignore) {
+			if (!targetProperties.contains(name)) {
+				error("ignore中的属性" + name + "在所有目标类中都不存在", mapper);
+				valid = false;
+			}
+		}
+		if (valid) {
+			writeSource(mapper, isInterface, methods);
+		}
+	}
+
+	/**
+	 * 生成一个映射方法
+	 *
+	 * @param targetProperties 收集所有目标类的属性名，用于检查ignore
+	 * @return 是否没有错误
+	 */
+	private boolean writeMethod(TypeElement mapper, ExecutableElement method, Set<String> ignore,
+	                            Set<String> targetProperties, StringBuilder out) {
+		final ExecutableType type = (ExecutableType) types.asMemberOf((DeclaredType) mapper.asType(), method);
+		final List<? extends TypeMirror> parameters = type.getParameterTypes();
+		final TypeMirror returnType = type.getReturnType();
+		final boolean create = parameters.size() == 1;
+		if (!method.getTypeParameters().isEmpty() || parameters.isEmpty() || parameters.size() > 2) {
+			error("映射方法必须为 T map(S source) 或 T/void map(S source, T target)", method);
+			return false;
+		}
+		final TypeMirror sourceType = parameters.get(0);
+		final TypeMirror targetType = create ? returnType : parameters.get(1);
+		if (sourceType.getKind() != TypeKind.DECLARED || targetType.getKind() != TypeKind.DECLARED) {
+			error("映射方法的原始类和目标类必须是类或接口", method);
+			return false;
+		}
+		if (!create && returnType.getKind() != TypeKind.VOID && !types.isAssignable(targetType, returnType)) {
+			error("映射方法的返回类型必须为void或目标类" + targetType, method);
+			return false;
+		}
+		if (create && !instantiable((TypeElement) types.asElement(targetType))) {
+			error("目标类" + targetType + "必须是可以通过无参构造方法创建的具体类", method);
+			return false;
+		}
+
+		final StringBuilder body = new StringBuilder();
+		// javac在同一位置只报告一个错误，同一方法的所有问题合并为一条
+		final List<String> problems = new ArrayList<>();
+		final Map<String, ExecutableElement> getters = getters((DeclaredType) sourceType);
+		final Map<String, List<ExecutableElement>> setters = setters((DeclaredType) targetType);
+		targetProperties.addAll(setters.keySet());
+		int index = 0;
+		for (Map.Entry<String, List<ExecutableElement>> entry : setters.entrySet()) {
+			final String property = entry.getKey();
+			if (ignore.contains(property)) {
+				continue;
+			}
+			final ExecutableElement getter = getters.get(property);
+			if (getter == null) {
+				problems.add(String.format("%s的属性%s在%s中没有对应的getter，不需要复制时在@BeanMapper(ignore)中声明",
+						targetType, property, sourceType));
+				continue;
+			}
+			final TypeMirror value = ((ExecutableType) types.asMemberOf((DeclaredType) sourceType, getter)).getReturnType();
+			ExecutableElement setter = null;
+			TypeMirror parameter = null;
+			for (ExecutableElement candidate : entry.getValue()) {
+				final TypeMirror accepted = ((ExecutableType) types.asMemberOf((DeclaredType) targetType, candidate))
+						.getParameterTypes().get(0);
+				if (types.isSameType(value, accepted)) {
+					setter = candidate;
+					parameter = accepted;
+					break;
+				}
+				if (setter == null && types.isAssignable(value, accepted)) {
+					setter = candidate;
+					parameter = accepted;
+				}
+			}
+			if (setter == null) {
+				problems.add(String.format("属性%s的类型不匹配：%s.%s()返回%s，不能传给%s.%s", property, sourceType,
+						getter.getSimpleName(), value, targetType, entry.getValue().get(0)));
+				continue;
+			}
+			final String read = "source." + getter.getSimpleName() + "()";
+			final String write = "target." + setter.getSimpleName();
+			if (!value.getKind().isPrimitive() && parameter.getKind().isPrimitive()) {
+				final String local = "value" + index++;
+				body.append("\t\tfinal ").append(value).append(' ').append(local).append(" = ").append(read).append(";\n")
+						.append("\t\tif (").append(local).append(" != null) {\n")
+						.append("\t\t\t").append(write).append('(').append(local).append(");\n")
+						.append("\t\t}\n");
+			} else {
+				body.append("\t\t").append(write).append('(').append(read).append(");\n");
+			}
+		}
+		if (!problems.isEmpty()) {
+			error(String.join("\n", problems), method);
+			return false;
+		}
+
+		final String result = returnType.getKind() == TypeKind.VOID ? "" : " target";
+		out.append("\n\t@Override\n\tpublic ").append(returnType).append(' ').append(method.getSimpleName())
+				.append('(').append(sourceType).append(" source");
+		if (create) {
+			out.append(") {\n")
+					.append("\t\tif (source == null) {\n\t\t\treturn null;\n\t\t}\n")
+					.append("\t\tfinal ").append(targetType).append(" target = new ").append(targetType).append("();\n");
+		} else {
+			out.append(", ").append(targetType).append(" target) {\n")
+					.append("\t\tif (source == null) {\n\t\t\treturn").append(result).append(";\n\t\t}\n");
+		}
+		out.append(body);
+		if (!result.isEmpty()) {
+			out.append("\t\treturn").append(result).append(";\n");
+		}
+		out.append("\t}\n");
+		return true;
+	}
+
+	/**
+	 * @return 属性名到getter，boolean属性的isX优先于getX
+	 */
+	private Map<String, ExecutableElement> getters(DeclaredType type) {
+		final Map<String, ExecutableElement> getters = new LinkedHashMap<>();
+		for (ExecutableElement method : publicMethods(type)) {
+			final String name = method.getSimpleName().toString();
+			if (!method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+				continue;
+			}
+			if (name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+				getters.put(Introspector.decapitalize(name.substring(2)), method);
+			} else if (name.startsWith("get") && name.length() > 3 && !"getClass".equals(name)) {
+				getters.putIfAbsent(Introspector.decapitalize(name.substring(3)), method);
+			}
+		}
+		return getters;
+	}
+
+	/**
+	 * @return 属性名到同名的所有setter
+	 */
+	private Map<String, List<ExecutableElement>> setters(DeclaredType type) {
+		final Map<String, List<ExecutableElement>> setters = new LinkedHashMap<>();
+		for (ExecutableElement method : publicMethods(type)) {
+			final String name = method.getSimpleName().toString();
+			if (method.getParameters().size() == 1 && name.startsWith("set") && name.length() > 3) {
+				setters.computeIfAbsent(Introspector.decapitalize(name.substring(3)), k -> new ArrayList<>()).add(method);
+			}
+		}
+		return setters;
+	}
+
+	private List<ExecutableElement> publicMethods(DeclaredType type) {
+		final List<ExecutableElement> methods = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers((TypeElement) type.asElement()))) {
+			if (method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC)) {
+				methods.add(method);
+			}
+		}
+		return methods;
+	}
+
+	private boolean instantiable(TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+				|| (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC))) {
+			return false;
+		}
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Set<String> ignored(TypeElement mapper) {
+		final Set<String> ignore = new LinkedHashSet<>();
+		for (AnnotationMirror mirror : mapper.getAnnotationMirrors()) {
+			if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(BEAN_MAPPER)) {
+				continue;
+			}
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+				if (entry.getKey().getSimpleName().contentEquals("ignore")) {
+					final Object value = entry.getValue().getValue();
+					if (value instanceof List) {
+						for (Object item : (List<?>) value) {
+							ignore.add(String.valueOf(((AnnotationValue) item).getValue()));
+						}
+					}
+				}
+			}
+		}
+		return ignore;
+	}
+
+	private void writeSource(TypeElement mapper, boolean isInterface, StringBuilder methods) {
+		final PackageElement pkg = elements.getPackageOf(mapper);
+		final String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		final String simpleName = implementationName(mapper);
+		final String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		final String generated = elements.getTypeElement("javax.annotation.processing.Generated") != null
+				? "javax.annotation.processing.Generated" : "javax.annotation.Generated";
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, mapper).openWriter()) {
+			if (!packageName.isEmpty()) {
+				writer.write("package " + packageName + ";\n\n");
+			}
+			writer.write("/**\n * 由BeanMapperProcessor根据{@link " + mapper.getQualifiedName() + "}生成\n */\n");
+			writer.write("@" + generated + "(\"" + BeanMapperProcessor.class.getName() + "\")\n");
+			writer.write("public class " + simpleName + (isInterface ? " implements " : " extends ")
+					+ mapper.getQualifiedName() + " {\n");
+			writer.write(methods.toString());
+			writer.write("}\n");
+		} catch (IOException e) {
+			error("无法生成" + qualifiedName + ": " + e.getMessage(), mapper);
+		}
+	}
+
+	/**
+	 * @return 外部类名_内部类名Impl，与Mappers.getMapper查找的类名一致
+	 */
+	private static String implementationName(TypeElement mapper) {
+		String name = mapper.getSimpleName().toString();
+		for (Element outer = mapper.getEnclosingElement(); outer instanceof TypeElement; outer = outer.getEnclosingElement()) {
+			name = outer.getSimpleName() + "_" + name;
+		}
+		return name + "Impl";
+	}
+
+	private void error(String message, Element element) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
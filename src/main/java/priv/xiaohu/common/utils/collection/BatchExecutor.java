@@ -0,0 +1,299 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>分组并行执行器</p>
+ * <p>把输入按固定大小分组后，在指定的线程池中对每一组执行函数并合并结果</p>
+ * <p>同时在执行中的分组数量不会超过上限，超过时调用线程会等待已提交的分组完成后再提交，
+ * 因此也可以用于处理{@link Iterator}形式的无界输入</p>
+ * <p>线程池可以是本类创建的独立ForkJoinPool，也可以是调用方提供的任意ExecutorService
+ * (例如JDK 21的虚拟线程执行器)，不会占用公共的ForkJoinPool.commonPool()</p>
+ * <p>执行器创建后配置不再改变，可以被多个调用方共享；{@link #ordered(boolean)}和{@link #failFast(boolean)}
+ * 返回使用同一个线程池的新执行器</p>
+ *
+ * @author zxh
+ */
+public class BatchExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final boolean failFast;
+
+    /**
+     * 创建使用独立ForkJoinPool的执行器，执行中的分组数量上限与并行度相同
+     *
+     * @param parallelism 并行度
+     */
+    public BatchExecutor(int parallelism) {
+        this(new ForkJoinPool(parallelism), parallelism, true, true, true);
+    }
+
+    /**
+     * 创建使用指定线程池的执行器，关闭本执行器时不会关闭该线程池
+     *
+     * @param executor    线程池
+     * @param maxInFlight 同时执行中的分组数量上限
+     */
+    public BatchExecutor(ExecutorService executor, int maxInFlight) {
+        this(executor, maxInFlight, false, true, true);
+    }
+
+    private BatchExecutor(ExecutorService executor, int maxInFlight, boolean ownsExecutor, boolean ordered, boolean failFast) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("执行中的分组数量上限必须大于0: " + maxInFlight);
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.maxInFlight = maxInFlight;
+        this.ownsExecutor = ownsExecutor;
+        this.ordered = ordered;
+        this.failFast = failFast;
+    }
+
+    /**
+     * 结果是否按分组顺序合并，默认为true；为false时按完成顺序合并
+     *
+     * @param ordered 是否按分组顺序合并
+     * @return 使用同一个线程池的执行器，关闭它不会关闭线程池，当前执行器不变
+     */
+    public BatchExecutor ordered(boolean ordered) {
+        return new BatchExecutor(executor, maxInFlight, false, ordered, failFast);
+    }
+
+    /**
+     * 是否在第一个分组失败时立即取消其余分组，默认为true；为false时执行完所有分组后统一报告错误
+     *
+     * @param failFast 是否快速失败
+     * @return 使用同一个线程池的执行器，关闭它不会关闭线程池，当前执行器不变
+     */
+    public BatchExecutor failFast(boolean failFast) {
+        return new BatchExecutor(executor, maxInFlight, false, ordered, failFast);
+    }
+
+    /**
+     * 将集合按每size个分一组，并行地对每组执行函数
+     *
+     * @param input    输入集合
+     * @param size     每组的大小
+     * @param function 对每组执行的函数
+     * @return 每组的执行结果
+     * @throws BatchExecutionException 有分组执行失败
+     */
+    public <T, R> List<R> execute(Collection<T> input, int size, Function<? super List<T>, ? extends R> function) {
+        return execute(CollectionUtil.partition(input, size).iterator(), function);
+    }
+
+    /**
+     * 并行地对迭代器给出的每一组执行函数，迭代器只会在调用线程中被读取
+     *
+     * @param batches  分组迭代器，例如{@link CollectionUtil#batches(Iterator, int)}
+     * @param function 对每组执行的函数
+     * @return 每组的执行结果
+     * @throws BatchExecutionException 有分组执行失败
+     */
+    public <T, R> List<R> execute(Iterator<List<T>> batches, Function<? super List<T>, ? extends R> function) {
+        return run(batches, function);
+    }
+
+    /**
+     * 将集合按每size个分一组，并行地对每组执行函数，并把每组返回的集合合并成一个List
+     *
+     * @param input    输入集合
+     * @param size     每组的大小
+     * @param function 对每组执行的函数
+     * @return 合并后的结果
+     * @throws BatchExecutionException 有分组执行失败
+     */
+    public <T, R> List<R> executeAndFlatten(Collection<T> input, int size, Function<? super List<T>, ? extends Collection<? extends R>> function) {
+        final List<Collection<? extends R>> results = execute(input, size, function);
+        final List<R> list = new ArrayList<>(input.size());
+        results.forEach(list::addAll);
+        return list;
+    }
+
+    /**
+     * 将集合按每size个分一组，并行地处理每组
+     *
+     * @param input    输入集合
+     * @param size     每组的大小
+     * @param consumer 处理每组的方法
+     * @throws BatchExecutionException 有分组执行失败
+     */
+    public <T> void forEach(Collection<T> input, int size, Consumer<? super List<T>> consumer) {
+        execute(input, size, batch -> {
+            consumer.accept(batch);
+            return null;
+        });
+    }
+
+    private <T, R> List<R> run(Iterator<List<T>> batches, Function<? super List<T>, ? extends R> function) {
+        final CompletionService<Indexed<R>> service = new ExecutorCompletionService<>(executor);
+        final List<Future<Indexed<R>>> futures = new ArrayList<>();
+        final List<R> results = new ArrayList<>();
+        final Map<Integer, Throwable> errors = new LinkedHashMap<>();
+        int inFlight = 0;
+        boolean completed = false;
+        try {
+            while (batches.hasNext()) {
+                if (inFlight == maxInFlight) {
+                    collect(service, futures, ordered, results, errors);
+                    inFlight--;
+                    if (failFast && !errors.isEmpty()) {
+                        break;
+                    }
+                }
+                final List<T> batch = batches.next();
+                final int index = futures.size();
+                final Future<Indexed<R>> future;
+                try {
+                    future = service.submit(() -> {
+                        try {
+                            return new Indexed<>(index, function.apply(batch), null);
+                        } catch (RuntimeException | Error e) {
+                            return new Indexed<>(index, null, e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // 线程池已关闭或队列已满，不再提交，已提交的分组按failFast取消或等待完成
+                    errors.put(index, e);
+                    break;
+                }
+                futures.add(future);
+                inFlight++;
+            }
+            while (inFlight > 0 && !(failFast && !errors.isEmpty())) {
+                collect(service, futures, ordered, results, errors);
+                inFlight--;
+            }
+            completed = errors.isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BatchExecutionException("分组执行被中断", e, errors, results);
+        } finally {
+            // 失败、中断或读取分组时抛出异常，都不再等待仍在执行的分组
+            if (!completed) {
+                cancel(futures);
+            }
+        }
+        if (!errors.isEmpty()) {
+            final Throwable first = errors.values().iterator().next();
+            throw new BatchExecutionException(errors.size() + "个分组执行失败", first, errors, results);
+        }
+        return results;
+    }
+
+    private static <R> void collect(CompletionService<Indexed<R>> service, List<Future<Indexed<R>>> futures,
+                                    boolean ordered, List<R> results, Map<Integer, Throwable> errors) throws InterruptedException {
+        final Future<Indexed<R>> future = service.take();
+        if (!future.isDone()) {
+            // 线程池取消了包装任务(例如shutdownNow后取消返回的任务)，分组本身没有执行，取消后按失败处理
+            future.cancel(false);
+        }
+        final Indexed<R> indexed;
+        try {
+            indexed = future.get();
+        } catch (ExecutionException | CancellationException e) {
+            // 任务本身已经捕获了异常，这里只可能是被线程池取消(例如shutdownNow)或线程池异常，按分组失败处理
+            final int index = futures.indexOf(future);
+            errors.put(index, e instanceof ExecutionException ? e.getCause() : e);
+            if (ordered) {
+                fill(results, index);
+            }
+            return;
+        }
+        if (indexed.error != null) {
+            errors.put(indexed.index, indexed.error);
+        }
+        if (ordered) {
+            fill(results, indexed.index);
+            results.set(indexed.index, indexed.result);
+        } else if (indexed.error == null) {
+            results.add(indexed.result);
+        }
+    }
+
+    /**
+     * 按顺序合并时补齐到index，尚未完成的分组先占位为null
+     */
+    private static <R> void fill(List<R> results, int index) {
+        while (results.size() <= index) {
+            results.add(null);
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * 关闭本执行器创建的线程池，调用方提供的线程池不会被关闭
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class Indexed<R> {
+        private final int index;
+        private final R result;
+        private final Throwable error;
+
+        private Indexed(int index, R result, Throwable error) {
+            this.index = index;
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 分组执行失败的异常，包含每个失败分组的序号和异常，以及已经完成的结果
+     */
+    public static class BatchExecutionException extends RuntimeException {
+        private static final long serialVersionUID = -3377062545406453216L;
+
+        private final transient Map<Integer, Throwable> errors;
+        private final transient List<?> results;
+
+        BatchExecutionException(String message, Throwable cause, Map<Integer, Throwable> errors, List<?> results) {
+            super(message, cause);
+            this.errors = Collections.unmodifiableMap(errors);
+            this.results = Collections.unmodifiableList(results);
+            errors.values().stream().filter(error -> error != cause).forEach(this::addSuppressed);
+        }
+
+        /**
+         * @return 失败的分组序号及其异常，按发现顺序排列
+         */
+        public Map<Integer, Throwable> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return 已经完成的分组结果，按分组顺序合并时失败或未完成的分组位置为null
+         */
+        public List<?> getResults() {
+            return results;
+        }
+    }
+}
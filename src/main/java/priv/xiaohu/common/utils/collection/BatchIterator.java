@@ -0,0 +1,105 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>把任意长度的迭代器按批次惰性读取的迭代器</p>
+ * <p>每次调用{@link #next()}才从源迭代器读取下一批，内存中只保留当前这一批</p>
+ * <p>当一批达到指定大小，或者(设置了最长等待时间时)从这一批第一个元素开始已经超过等待时间，就返回这一批。
+ * 等待时间只在两次读取元素之间检查，不会打断阻塞中的源迭代器</p>
+ * <p>开启缓冲区复用后每次返回的是同一个List，调用方必须在下一次调用{@link #next()}之前处理完上一批</p>
+ *
+ * @param <T> 元素类型
+ * @author zxh
+ */
+public class BatchIterator<T> implements Iterator<List<T>> {
+
+    /**
+     * 缓冲区最多预分配的容量：按时间截止的批次通常达不到size，size很大(例如Integer.MAX_VALUE表示只按时间分批)时按需扩容
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1 << 10;
+
+    private final Iterator<? extends T> source;
+    private final int size;
+    private final long maxWaitNanos;
+    private final boolean reuseBuffer;
+    private ArrayList<T> buffer;
+    private List<T> bufferView;
+
+    /**
+     * @param source 源迭代器
+     * @param size   每批的最大元素个数
+     */
+    public BatchIterator(Iterator<? extends T> source, int size) {
+        this(source, size, 0, TimeUnit.NANOSECONDS, false);
+    }
+
+    /**
+     * @param source      源迭代器
+     * @param size        每批的最大元素个数
+     * @param maxWait     每批最长等待时间，小于等于0表示不限时间
+     * @param unit        等待时间的单位
+     * @param reuseBuffer 是否复用同一个List作为每批的缓冲区
+     */
+    public BatchIterator(Iterator<? extends T> source, int size, long maxWait, TimeUnit unit, boolean reuseBuffer) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("分组大小必须大于0: " + size);
+        }
+        this.source = Objects.requireNonNull(source);
+        this.size = size;
+        this.maxWaitNanos = maxWait > 0 ? unit.toNanos(maxWait) : 0;
+        this.reuseBuffer = reuseBuffer;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return source.hasNext();
+    }
+
+    @Override
+    public List<T> next() {
+        if (!source.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final ArrayList<T> batch = nextBuffer();
+        final long deadline = maxWaitNanos > 0 ? System.nanoTime() + maxWaitNanos : 0;
+        do {
+            batch.add(source.next());
+        } while (batch.size() < size && (deadline == 0 || System.nanoTime() - deadline < 0) && source.hasNext());
+        return reuseBuffer ? bufferView : batch;
+    }
+
+    /**
+     * 转换为有序、元素非空的Spliterator，便于构造Stream
+     *
+     * @return 按批次读取的Spliterator
+     */
+    public Spliterator<List<T>> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    private ArrayList<T> nextBuffer() {
+        if (!reuseBuffer) {
+            return new ArrayList<>(initialCapacity());
+        }
+        if (buffer == null) {
+            buffer = new ArrayList<>(initialCapacity());
+            bufferView = Collections.unmodifiableList(buffer);
+        } else {
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private int initialCapacity() {
+        return Math.min(size, MAX_INITIAL_CAPACITY);
+    }
+}
@@ -0,0 +1,104 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>(主键, 副键)的布隆过滤器</p>
+ * <p>由两个键的32位哈希值混合成64位哈希，再用双重哈希得到k个位置。
+ * 位数组长度为2的幂，不会漏判，误判率由创建时的预计元素个数和期望误判率决定</p>
+ *
+ * @author zxh
+ */
+final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+    private final int hashes;
+    private final long mask;
+
+    /**
+     * @param expectedInsertions 预计的元素个数
+     * @param falsePositiveRate  期望误判率，范围为(0, 1)
+     */
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("误判率必须在0和1之间: " + falsePositiveRate);
+        }
+        final long n = Math.max(expectedInsertions, 1);
+        final long optimal = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2));
+        final long size = Math.min(Math.max(Long.highestOneBit(Math.max(optimal - 1, 1)) << 1, 64), 1L << 36);
+        this.bits = new long[(int) (size >>> 6)];
+        this.hashes = (int) Math.min(Math.max(Math.round(-Math.log(falsePositiveRate) / LN2), 1), 16);
+        this.mask = size - 1;
+    }
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.hashes = hashes;
+        this.mask = ((long) bits.length << 6) - 1;
+    }
+
+    /**
+     * 混合两个键的哈希值
+     */
+    static long hash(int h1, int h2) {
+        long h = ((long) h1 << 32) ^ (h2 & 0xffffffffL);
+        // MurmurHash3的64位混合函数
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    void put(long hash) {
+        final long h1 = hash;
+        final long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            final long index = (h1 + i * h2) & mask;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    boolean mightContain(long hash) {
+        final long h1 = hash;
+        final long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            final long index = (h1 + i * h2) & mask;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    /**
+     * 写入格式：int 哈希函数个数, int long个数, long[] 位数组
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * 从buffer的当前位置读取{@link #writeTo(DataOutput)}写入的过滤器，复制到堆上
+     */
+    static BloomFilter read(ByteBuffer buffer) {
+        final int hashes = buffer.getInt();
+        final long[] bits = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(bits);
+        return new BloomFilter(bits, hashes);
+    }
+}
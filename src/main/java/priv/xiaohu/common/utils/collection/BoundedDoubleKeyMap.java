@@ -0,0 +1,1021 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>有容量上限的双键Map，用作(主键, 副键) → 值的缓存</p>
+ * <p>可以限制全局和每个主键下的键值对个数或总权重，超过上限时按淘汰策略删除键值对：</p>
+ * <ul>
+ * <li>{@link Policy#LRU}：删除最久未访问的键值对</li>
+ * <li>{@link Policy#LFU}：W-TinyLFU，新键值对先进入占容量1%的窗口区，离开窗口时与主区域中最久未访问的键值对
+ * 比较近期访问频率(由{@link FrequencySketch}估计)，频率低的一方被淘汰。主区域分为试用区和保护区(80%)，
+ * 试用区中再次被访问的键值对晋升到保护区</li>
+ * </ul>
+ * <p>每个主键的上限总是淘汰该主键下最久未访问的键值对，防止个别主键占满全局容量</p>
+ * <p>键值对可以设置存活时间(TTL)，过期的键值对在读写时被清理，也可以调用{@link #cleanUp()}主动清理。
+ * 因容量或过期被删除的键值对会通知{@link EvictionListener}，主动删除和覆盖不会通知；
+ * 监听器在释放锁之后调用</p>
+ * <p>所有方法线程安全(使用同一把锁)，值不能为null</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+public class BoundedDoubleKeyMap<K1, K2, V> {
+
+    /**
+     * 淘汰策略
+     */
+    public enum Policy {
+        /**
+         * 最近最少使用
+         */
+        LRU,
+        /**
+         * 最不经常使用，使用W-TinyLFU实现
+         */
+        LFU
+    }
+
+    /**
+     * 淘汰原因
+     */
+    public enum EvictionCause {
+        /**
+         * 超过全局或主键的容量上限
+         */
+        SIZE,
+        /**
+         * 超过存活时间
+         */
+        EXPIRED
+    }
+
+    /**
+     * 淘汰监听器
+     */
+    @FunctionalInterface
+    public interface EvictionListener<K1, K2, V> {
+        void onEviction(K1 k1, K2 k2, V v, EvictionCause cause);
+    }
+
+    /**
+     * 计算键值对的权重
+     */
+    @FunctionalInterface
+    public interface Weigher<K1, K2, V> {
+        /**
+         * @return 权重，不能小于0
+         */
+        int weigh(K1 k1, K2 k2, V v);
+    }
+
+    private static final long NEVER = Long.MAX_VALUE;
+    /**
+     * 通知监听器时标记过期淘汰
+     */
+    private static final long EXPIRED_MARK = Long.MIN_VALUE;
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K1, Row<K1, K2, V>> rows = new HashMap<>();
+    /**
+     * 单独设置了上限的主键
+     */
+    private final Map<K1, Long> rowLimits = new HashMap<>();
+    private final long maximumWeight;
+    private final long maximumRowWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final boolean tinyLfu;
+    private final Weigher<? super K1, ? super K2, ? super V> weigher;
+    private final long expireAfterWriteNanos;
+    private final EvictionListener<? super K1, ? super K2, ? super V> listener;
+    private final LongSupplier ticker;
+    /**
+     * LRU时只使用window
+     */
+    private final AccessQueue<K1, K2, V> window = new AccessQueue<>();
+    private final AccessQueue<K1, K2, V> probation = new AccessQueue<>();
+    private final AccessQueue<K1, K2, V> protectedQueue = new AccessQueue<>();
+    private final ExpirationHeap<K1, K2, V> expirations = new ExpirationHeap<>();
+    private final FrequencySketch sketch;
+    /**
+     * 等待通知监听器的被淘汰键值对
+     */
+    private List<Node<K1, K2, V>> evicted = new ArrayList<>();
+
+    private long weight;
+    private int entryCount;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+
+    private BoundedDoubleKeyMap(Builder<K1, K2, V> builder) {
+        maximumWeight = builder.maximumWeight;
+        maximumRowWeight = builder.maximumRowWeight;
+        weigher = builder.weigher;
+        expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        listener = builder.listener;
+        ticker = builder.ticker;
+        tinyLfu = builder.policy == Policy.LFU && maximumWeight != Long.MAX_VALUE;
+        windowMaximum = tinyLfu ? Math.max(1, maximumWeight / 100) : Long.MAX_VALUE;
+        protectedMaximum = tinyLfu ? (maximumWeight - windowMaximum) * 4 / 5 : 0;
+        sketch = tinyLfu ? new FrequencySketch() : null;
+        if (tinyLfu) {
+            sketch.ensureCapacity(weigher == null ? maximumWeight : 1024);
+        }
+    }
+
+    public static <K1, K2, V> Builder<K1, K2, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 获取值并记录访问，不存在或已过期时返回null
+     */
+    public V get(K1 k1, K2 k2) {
+        final V v;
+        lock.lock();
+        try {
+            final long now = ticker.getAsLong();
+            expire(now);
+            final Node<K1, K2, V> node = find(k1, k2, now);
+            if (node == null) {
+                missCount++;
+                v = null;
+            } else {
+                hitCount++;
+                onAccess(node);
+                v = node.value;
+            }
+        } finally {
+            unlock();
+        }
+        return v;
+    }
+
+    /**
+     * 放入值，使用默认的存活时间
+     *
+     * @return 旧值，不存在时返回null
+     */
+    public V put(K1 k1, K2 k2, V v) {
+        return put(k1, k2, v, expireAfterWriteNanos);
+    }
+
+    /**
+     * 放入值并指定该键值对的存活时间
+     *
+     * @return 旧值，不存在时返回null
+     */
+    public V put(K1 k1, K2 k2, V v, long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("存活时间不能小于0: " + duration);
+        }
+        return put(k1, k2, v, unit.toNanos(duration));
+    }
+
+    /**
+     * 不存在时用函数计算值并放入。函数在锁外执行，并发时可能被调用多次，但只有第一个结果会被放入
+     *
+     * @return 已存在的值或新放入的值，函数返回null时不放入并返回null
+     */
+    public V computeIfAbsent(K1 k1, K2 k2, BiFunction<? super K1, ? super K2, ? extends V> mappingFunction) {
+        final V existing = get(k1, k2);
+        if (existing != null) {
+            return existing;
+        }
+        final V v = mappingFunction.apply(k1, k2);
+        if (v == null) {
+            return null;
+        }
+        final V raced;
+        lock.lock();
+        try {
+            final long now = ticker.getAsLong();
+            final Node<K1, K2, V> node = find(k1, k2, now);
+            if (node != null) {
+                onAccess(node);
+                raced = node.value;
+            } else {
+                insert(k1, k2, v, deadline(now, expireAfterWriteNanos));
+                raced = null;
+            }
+        } finally {
+            unlock();
+        }
+        return raced != null ? raced : v;
+    }
+
+    private V put(K1 k1, K2 k2, V v, long ttlNanos) {
+        Objects.requireNonNull(v);
+        V old = null;
+        lock.lock();
+        try {
+            final long now = ticker.getAsLong();
+            expire(now);
+            final long expireAt = deadline(now, ttlNanos);
+            final Row<K1, K2, V> row = rows.get(k1);
+            final Node<K1, K2, V> node = row == null ? null : row.entries.get(k2);
+            if (node == null) {
+                insert(k1, k2, v, expireAt);
+            } else {
+                old = node.value;
+                final int w = weigh(k1, k2, v);
+                adjustWeight(node, w - node.weight);
+                node.value = v;
+                node.weight = w;
+                expirations.remove(node);
+                node.expireAt = expireAt;
+                if (expireAt != NEVER) {
+                    expirations.add(node);
+                }
+                onAccess(node);
+                evict(row);
+            }
+        } finally {
+            unlock();
+        }
+        return old;
+    }
+
+    public V remove(K1 k1, K2 k2) {
+        lock.lock();
+        try {
+            final Row<K1, K2, V> row = rows.get(k1);
+            final Node<K1, K2, V> node = row == null ? null : row.entries.get(k2);
+            if (node == null) {
+                return null;
+            }
+            removeNode(node);
+            return node.expireAt > ticker.getAsLong() ? node.value : null;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 删除主键下所有键值对
+     *
+     * @return 被删除的未过期键值对，主键不存在时返回null
+     */
+    public Map<K2, V> remove(K1 k1) {
+        lock.lock();
+        try {
+            final Row<K1, K2, V> row = rows.get(k1);
+            if (row == null) {
+                return null;
+            }
+            final Map<K2, V> removed = snapshot(row, ticker.getAsLong());
+            while (row.head != null) {
+                removeNode(row.head);
+            }
+            return removed;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 是否存在未过期的键值对，不记录访问
+     */
+    public boolean containsKey(K1 k1, K2 k2) {
+        lock.lock();
+        try {
+            return find(k1, k2, ticker.getAsLong()) != null;
+        } finally {
+            unlock();
+        }
+    }
+
+    public boolean containsKey(K1 k1) {
+        lock.lock();
+        try {
+            return rows.containsKey(k1);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return 主键下未过期键值对的副本，不记录访问，主键不存在时返回null
+     */
+    public Map<K2, V> get(K1 k1) {
+        lock.lock();
+        try {
+            final Row<K1, K2, V> row = rows.get(k1);
+            return row == null ? null : snapshot(row, ticker.getAsLong());
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 单独设置主键下的容量上限(个数或权重)，覆盖全局的每主键上限，超出部分立即淘汰
+     */
+    public void setMaximumWeight(K1 k1, long maximum) {
+        if (maximum < 0) {
+            throw new IllegalArgumentException("容量上限不能小于0: " + maximum);
+        }
+        lock.lock();
+        try {
+            rowLimits.put(k1, maximum);
+            final Row<K1, K2, V> row = rows.get(k1);
+            if (row != null) {
+                evict(row);
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 取消主键单独设置的上限，恢复使用全局的每主键上限
+     */
+    public void removeMaximumWeight(K1 k1) {
+        lock.lock();
+        try {
+            rowLimits.remove(k1);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 清理所有已过期的键值对
+     */
+    public void cleanUp() {
+        lock.lock();
+        try {
+            expire(ticker.getAsLong());
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 删除所有键值对，不通知监听器
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            rows.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            expirations.clear();
+            weight = 0;
+            entryCount = 0;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return 主键个数(包括未清理的过期键值对所在的主键)
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return rows.size();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return 键值对个数(包括未清理的过期键值对)
+     */
+    public int entryCount() {
+        lock.lock();
+        try {
+            return entryCount;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return 总权重，没有设置权重函数时与键值对个数相同
+     */
+    public long weight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 遍历未过期的键值对，不记录访问。遍历的是调用时的副本
+     */
+    public void forEach(TriConsumer<K1, K2, V> consumer) {
+        toDoubleKeyMap().forEach(consumer);
+    }
+
+    /**
+     * @return 未过期键值对的副本
+     */
+    public DoubleKeyMap<K1, K2, V> toDoubleKeyMap() {
+        lock.lock();
+        try {
+            final long now = ticker.getAsLong();
+            final DoubleKeyMap<K1, K2, V> map = new DoubleKeyMap<>((int) (rows.size() / 0.75f) + 1);
+            for (Row<K1, K2, V> row : rows.values()) {
+                for (Node<K1, K2, V> node = row.head; node != null; node = node.rowNext) {
+                    if (node.expireAt > now) {
+                        map.put(node.k1, node.k2, node.value);
+                    }
+                }
+            }
+            return map;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * @return 当前的命中和淘汰统计
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hitCount, missCount, evictionCount, expirationCount);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * 释放锁，然后通知监听器
+     */
+    private void unlock() {
+        List<Node<K1, K2, V>> notifications = null;
+        if (!evicted.isEmpty()) {
+            notifications = evicted;
+            evicted = new ArrayList<>();
+        }
+        lock.unlock();
+        if (notifications != null) {
+            for (Node<K1, K2, V> node : notifications) {
+                listener.onEviction(node.k1, node.k2, node.value, node.expireAt == EXPIRED_MARK ? EvictionCause.EXPIRED : EvictionCause.SIZE);
+            }
+        }
+    }
+
+    private Node<K1, K2, V> find(K1 k1, K2 k2, long now) {
+        final Row<K1, K2, V> row = rows.get(k1);
+        final Node<K1, K2, V> node = row == null ? null : row.entries.get(k2);
+        if (node == null) {
+            return null;
+        }
+        if (node.expireAt <= now) {
+            evict(node, EvictionCause.EXPIRED);
+            return null;
+        }
+        return node;
+    }
+
+    private void insert(K1 k1, K2 k2, V v, long expireAt) {
+        Row<K1, K2, V> row = rows.get(k1);
+        if (row == null) {
+            row = new Row<>(k1);
+            rows.put(k1, row);
+        }
+        final Node<K1, K2, V> node = new Node<>(k1, k2, v, weigh(k1, k2, v), expireAt, row);
+        row.entries.put(k2, node);
+        row.linkLast(node);
+        row.weight += node.weight;
+        window.addLast(node);
+        weight += node.weight;
+        entryCount++;
+        if (expireAt != NEVER) {
+            expirations.add(node);
+        }
+        if (tinyLfu) {
+            if (weigher != null && entryCount > sketch.capacity()) {
+                sketch.ensureCapacity(2L * entryCount);
+            }
+            sketch.increment(node.hash);
+        }
+        evict(row);
+    }
+
+    private void onAccess(Node<K1, K2, V> node) {
+        node.row.moveToLast(node);
+        if (!tinyLfu) {
+            window.moveToLast(node);
+            return;
+        }
+        sketch.increment(node.hash);
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.addLast(node);
+            demoteProtected();
+        } else {
+            protectedQueue.moveToLast(node);
+        }
+    }
+
+    /**
+     * 保护区超出上限时，把最久未访问的键值对降到试用区
+     */
+    private void demoteProtected() {
+        while (protectedQueue.weight > protectedMaximum && protectedQueue.head != null) {
+            final Node<K1, K2, V> node = protectedQueue.head;
+            protectedQueue.remove(node);
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    private void adjustWeight(Node<K1, K2, V> node, long delta) {
+        node.row.weight += delta;
+        weight += delta;
+        queueOf(node).weight += delta;
+    }
+
+    /**
+     * 先按主键上限淘汰，再按全局上限淘汰
+     */
+    private void evict(Row<K1, K2, V> row) {
+        final Long rowLimit = rowLimits.get(row.key);
+        final long maximum = rowLimit != null ? rowLimit : maximumRowWeight;
+        while (row.weight > maximum && row.head != null) {
+            evict(row.head, EvictionCause.SIZE);
+        }
+        if (!tinyLfu) {
+            while (weight > maximumWeight && window.head != null) {
+                evict(window.head, EvictionCause.SIZE);
+            }
+            return;
+        }
+        while (weight > maximumWeight) {
+            final Node<K1, K2, V> candidate = window.head;
+            final Node<K1, K2, V> victim = probation.head != null ? probation.head : protectedQueue.head;
+            if (candidate != null && (window.weight > windowMaximum || victim == null)) {
+                if (victim != null && sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                    evict(victim, EvictionCause.SIZE);
+                    moveToProbation(candidate);
+                } else {
+                    evict(candidate, EvictionCause.SIZE);
+                }
+            } else if (victim != null) {
+                evict(victim, EvictionCause.SIZE);
+            } else {
+                break;
+            }
+        }
+        // 容量未满时，离开窗口的键值对直接进入试用区
+        while (window.weight > windowMaximum && window.head != null) {
+            moveToProbation(window.head);
+        }
+    }
+
+    private void moveToProbation(Node<K1, K2, V> node) {
+        window.remove(node);
+        node.queue = PROBATION;
+        probation.addLast(node);
+    }
+
+    private void expire(long now) {
+        Node<K1, K2, V> node;
+        while ((node = expirations.peek()) != null && node.expireAt <= now) {
+            evict(node, EvictionCause.EXPIRED);
+        }
+    }
+
+    private void evict(Node<K1, K2, V> node, EvictionCause cause) {
+        removeNode(node);
+        if (cause == EvictionCause.EXPIRED) {
+            expirationCount++;
+        } else {
+            evictionCount++;
+        }
+        if (listener != null) {
+            if (cause == EvictionCause.EXPIRED) {
+                node.expireAt = EXPIRED_MARK;
+            }
+            evicted.add(node);
+        }
+    }
+
+    private void removeNode(Node<K1, K2, V> node) {
+        final Row<K1, K2, V> row = node.row;
+        row.entries.remove(node.k2);
+        row.unlink(node);
+        row.weight -= node.weight;
+        if (row.entries.isEmpty()) {
+            rows.remove(row.key);
+        }
+        queueOf(node).remove(node);
+        expirations.remove(node);
+        weight -= node.weight;
+        entryCount--;
+    }
+
+    private AccessQueue<K1, K2, V> queueOf(Node<K1, K2, V> node) {
+        return node.queue == WINDOW ? window : node.queue == PROBATION ? probation : protectedQueue;
+    }
+
+    private int weigh(K1 k1, K2 k2, V v) {
+        if (weigher == null) {
+            return 1;
+        }
+        final int w = weigher.weigh(k1, k2, v);
+        if (w < 0) {
+            throw new IllegalArgumentException("权重不能小于0: " + w);
+        }
+        return w;
+    }
+
+    private static long deadline(long now, long ttlNanos) {
+        if (ttlNanos == NEVER) {
+            return NEVER;
+        }
+        final long deadline = now + ttlNanos;
+        // 溢出时视为永不过期
+        return deadline < now ? NEVER : deadline;
+    }
+
+    private Map<K2, V> snapshot(Row<K1, K2, V> row, long now) {
+        final Map<K2, V> map = new LinkedHashMap<>((int) (row.entries.size() / 0.75f) + 1);
+        for (Node<K1, K2, V> node = row.head; node != null; node = node.rowNext) {
+            if (node.expireAt > now) {
+                map.put(node.k2, node.value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 命中和淘汰统计
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        private Stats(long hitCount, long missCount, long evictionCount, long expirationCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return 因容量上限被淘汰的个数
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return 因过期被删除的个数
+         */
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        public double getHitRate() {
+            final long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                    + ", expirationCount=" + expirationCount + '}';
+        }
+    }
+
+    /**
+     * 构建器，默认没有上限、不过期、使用LRU策略
+     */
+    public static final class Builder<K1, K2, V> {
+        private long maximumWeight = Long.MAX_VALUE;
+        private long maximumRowWeight = Long.MAX_VALUE;
+        private boolean sizeBound;
+        private Weigher<? super K1, ? super K2, ? super V> weigher;
+        private long expireAfterWriteNanos = NEVER;
+        private Policy policy = Policy.LRU;
+        private EvictionListener<? super K1, ? super K2, ? super V> listener;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * 全局的键值对个数上限
+         */
+        public Builder<K1, K2, V> maximumSize(long maximumSize) {
+            maximumWeight = checkMaximum(maximumSize);
+            sizeBound = true;
+            return this;
+        }
+
+        /**
+         * 每个主键下的键值对个数上限
+         */
+        public Builder<K1, K2, V> maximumSizePerKey(long maximumSize) {
+            maximumRowWeight = checkMaximum(maximumSize);
+            sizeBound = true;
+            return this;
+        }
+
+        /**
+         * 全局的总权重上限，需要同时设置{@link #weigher(Weigher)}
+         */
+        public Builder<K1, K2, V> maximumWeight(long maximumWeight) {
+            this.maximumWeight = checkMaximum(maximumWeight);
+            return this;
+        }
+
+        /**
+         * 每个主键下的总权重上限，需要同时设置{@link #weigher(Weigher)}
+         */
+        public Builder<K1, K2, V> maximumWeightPerKey(long maximumWeight) {
+            maximumRowWeight = checkMaximum(maximumWeight);
+            return this;
+        }
+
+        public Builder<K1, K2, V> weigher(Weigher<? super K1, ? super K2, ? super V> weigher) {
+            this.weigher = Objects.requireNonNull(weigher);
+            return this;
+        }
+
+        /**
+         * 默认的存活时间，从放入时开始计算，可以在put时为单个键值对另外指定
+         */
+        public Builder<K1, K2, V> expireAfterWrite(long duration, TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("存活时间不能小于0: " + duration);
+            }
+            expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder<K1, K2, V> policy(Policy policy) {
+            this.policy = Objects.requireNonNull(policy);
+            return this;
+        }
+
+        public Builder<K1, K2, V> evictionListener(EvictionListener<? super K1, ? super K2, ? super V> listener) {
+            this.listener = Objects.requireNonNull(listener);
+            return this;
+        }
+
+        /**
+         * 纳秒时钟，默认为{@link System#nanoTime()}
+         */
+        public Builder<K1, K2, V> ticker(LongSupplier ticker) {
+            this.ticker = Objects.requireNonNull(ticker);
+            return this;
+        }
+
+        public BoundedDoubleKeyMap<K1, K2, V> build() {
+            if (sizeBound && weigher != null) {
+                throw new IllegalStateException("按个数限制时不能设置权重函数");
+            }
+            return new BoundedDoubleKeyMap<>(this);
+        }
+
+        private static long checkMaximum(long maximum) {
+            if (maximum < 0) {
+                throw new IllegalArgumentException("容量上限不能小于0: " + maximum);
+            }
+            return maximum;
+        }
+    }
+
+    private static final class Node<K1, K2, V> {
+        final K1 k1;
+        final K2 k2;
+        final int hash;
+        final Row<K1, K2, V> row;
+        V value;
+        int weight;
+        long expireAt;
+        byte queue = WINDOW;
+        Node<K1, K2, V> prev;
+        Node<K1, K2, V> next;
+        Node<K1, K2, V> rowPrev;
+        Node<K1, K2, V> rowNext;
+        int heapIndex = -1;
+
+        Node(K1 k1, K2 k2, V value, int weight, long expireAt, Row<K1, K2, V> row) {
+            this.k1 = k1;
+            this.k2 = k2;
+            this.hash = 31 * Objects.hashCode(k1) + Objects.hashCode(k2);
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+            this.row = row;
+        }
+    }
+
+    /**
+     * 一个主键下的键值对，按访问顺序链接
+     */
+    private static final class Row<K1, K2, V> {
+        final K1 key;
+        final Map<K2, Node<K1, K2, V>> entries = new HashMap<>();
+        long weight;
+        Node<K1, K2, V> head;
+        Node<K1, K2, V> tail;
+
+        Row(K1 key) {
+            this.key = key;
+        }
+
+        void linkLast(Node<K1, K2, V> node) {
+            node.rowPrev = tail;
+            node.rowNext = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.rowNext = node;
+            }
+            tail = node;
+        }
+
+        void unlink(Node<K1, K2, V> node) {
+            if (node.rowPrev == null) {
+                head = node.rowNext;
+            } else {
+                node.rowPrev.rowNext = node.rowNext;
+            }
+            if (node.rowNext == null) {
+                tail = node.rowPrev;
+            } else {
+                node.rowNext.rowPrev = node.rowPrev;
+            }
+            node.rowPrev = null;
+            node.rowNext = null;
+        }
+
+        void moveToLast(Node<K1, K2, V> node) {
+            if (node != tail) {
+                unlink(node);
+                linkLast(node);
+            }
+        }
+    }
+
+    /**
+     * 按访问顺序链接的队列，头部是最久未访问的
+     */
+    private static final class AccessQueue<K1, K2, V> {
+        Node<K1, K2, V> head;
+        Node<K1, K2, V> tail;
+        long weight;
+
+        void addLast(Node<K1, K2, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<K1, K2, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node<K1, K2, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+
+    /**
+     * 按过期时间排序的二叉堆，节点记录自己在堆中的下标，可以O(log n)删除
+     */
+    private static final class ExpirationHeap<K1, K2, V> {
+        @SuppressWarnings("unchecked")
+        private Node<K1, K2, V>[] heap = (Node<K1, K2, V>[]) new Node<?, ?, ?>[16];
+        private int size;
+
+        Node<K1, K2, V> peek() {
+            return size == 0 ? null : heap[0];
+        }
+
+        void add(Node<K1, K2, V> node) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size << 1);
+            }
+            siftUp(size++, node);
+        }
+
+        void remove(Node<K1, K2, V> node) {
+            final int i = node.heapIndex;
+            if (i < 0) {
+                return;
+            }
+            node.heapIndex = -1;
+            final Node<K1, K2, V> last = heap[--size];
+            heap[size] = null;
+            if (i == size) {
+                return;
+            }
+            siftDown(i, last);
+            if (heap[i] == last) {
+                siftUp(i, last);
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                heap[i].heapIndex = -1;
+                heap[i] = null;
+            }
+            size = 0;
+        }
+
+        private void siftUp(int i, Node<K1, K2, V> node) {
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                final Node<K1, K2, V> p = heap[parent];
+                if (p.expireAt <= node.expireAt) {
+                    break;
+                }
+                set(i, p);
+                i = parent;
+            }
+            set(i, node);
+        }
+
+        private void siftDown(int i, Node<K1, K2, V> node) {
+            final int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1].expireAt < heap[child].expireAt) {
+                    child++;
+                }
+                if (node.expireAt <= heap[child].expireAt) {
+                    break;
+                }
+                set(i, heap[child]);
+                i = child;
+            }
+            set(i, node);
+        }
+
+        private void set(int i, Node<K1, K2, V> node) {
+            heap[i] = node;
+            node.heapIndex = i;
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package priv.xiaohu.common.utils.collection;
 
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 集合工具类
@@ -20,12 +33,16 @@ public class CollectionUtil {
      * @return 分割后的集合的List集合
      */
     public static <T> List<Collection<T>> splitEntities(Collection<T> list, int size) {
-        // 计算组数
-        int limit = (list.size() + size - 1) / size;
-        return Stream.iterate(0, n -> n + 1)
-                .limit(limit).parallel()
-                .map(a -> list.stream().skip(a * size).limit(size).parallel().collect(Collectors.toList()))
-                .collect(Collectors.toList());
+        checkSize(size);
+        if (!(list instanceof List && list instanceof RandomAccess)) {
+            // 单次遍历时每组已经是独立的ArrayList，不需要再复制
+            return new ArrayList<>(chunk(list, size));
+        }
+        final List<List<T>> partitions = new Partition<>((List<T>) list, size);
+        final List<Collection<T>> result = new ArrayList<>(partitions.size());
+        // subList视图复制一份，保持原方法返回独立集合的语义
+        partitions.forEach(partition -> result.add(new ArrayList<>(partition)));
+        return result;
     }
 
     /**
@@ -35,11 +52,311 @@ public class CollectionUtil {
      * @return 分割后的Map集合的List集合
      */
     public static <K, V> List<Map<K, V>> splitEntities(Map<K, V> map, int size) {
+        checkSize(size);
         // 计算组数
-        int limit = (map.size() + size - 1) / size;
-        return Stream.iterate(0, n -> n + 1)
-                .limit(limit).parallel()
-                .map(a -> map.entrySet().stream().skip(a * size).limit(size).parallel().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))
-                .collect(Collectors.toList());
+        int limit = groups(map.size(), size);
+        final List<Map<K, V>> result = new ArrayList<>(limit);
+        Map<K, V> current = null;
+        int remaining = map.size();
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            if (current == null || current.size() == size) {
+                current = new HashMap<>(capacity(Math.min(size, remaining)));
+                result.add(current);
+            }
+            current.put(entry.getKey(), entry.getValue());
+            remaining--;
+        }
+        return result;
+    }
+
+    /**
+     * 将Map集合按照键的哈希值分成shards组，只遍历一次
+     *
+     * @param map    要分隔的Map集合
+     * @param shards 分组数
+     * @return 分组后的Map集合，第i个Map包含所有分到第i组的键
+     */
+    public static <K, V> List<Map<K, V>> shard(Map<K, V> map, int shards) {
+        return shard(map, shards, CollectionUtil::hashShard, false);
+    }
+
+    /**
+     * 将Map集合按照指定的分组函数分成shards组，只遍历一次
+     *
+     * @param map           要分隔的Map集合
+     * @param shards        分组数
+     * @param shardFunction 计算键所在分组的函数，结果会对shards取模
+     * @return 分组后的Map集合
+     */
+    public static <K, V> List<Map<K, V>> shard(Map<K, V> map, int shards, ToIntFunction<? super K> shardFunction) {
+        return shard(map, shards, shardFunction, false);
+    }
+
+    /**
+     * <p>将Map集合按照指定的分组函数分成shards组</p>
+     * <p>view为false时只遍历一次，把每个键值对复制到预设大小的HashMap中；
+     * view为true时不复制，返回原Map的只读视图，视图的查找只访问原Map，遍历和size()会遍历原Map并过滤</p>
+     *
+     * @param map           要分隔的Map集合
+     * @param shards        分组数
+     * @param shardFunction 计算键所在分组的函数，结果会对shards取模
+     * @param view          是否返回只读视图
+     * @return 分组后的Map集合
+     */
+    public static <K, V> List<Map<K, V>> shard(Map<K, V> map, int shards, ToIntFunction<? super K> shardFunction, boolean view) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("分组数必须大于0: " + shards);
+        }
+        final List<Map<K, V>> result = new ArrayList<>(shards);
+        if (view) {
+            for (int i = 0; i < shards; i++) {
+                result.add(Collections.unmodifiableMap(new ShardView<>(map, shards, i, shardFunction)));
+            }
+            return result;
+        }
+        // 预留1/8的余量，避免分布略不均匀时扩容
+        final int expected = map.size() / shards;
+        final int capacity = capacity(expected + (expected >> 3));
+        for (int i = 0; i < shards; i++) {
+            result.add(new HashMap<>(capacity));
+        }
+        map.forEach((k, v) -> result.get(shardOf(k, shards, shardFunction)).put(k, v));
+        return result;
+    }
+
+    /**
+     * <p>将List集合按照每size个分一组，不复制元素</p>
+     * <p>返回的每一组都是原集合的subList视图，对原集合的结构修改会使视图失效</p>
+     *
+     * @param list 要分隔的List集合
+     * @param size 每组的大小
+     * @return 分组视图，顺序与原集合一致
+     */
+    public static <T> List<List<T>> partition(List<T> list, int size) {
+        checkSize(size);
+        if (list instanceof RandomAccess) {
+            return new Partition<>(list, size);
+        }
+        return chunk(list, size);
+    }
+
+    /**
+     * <p>将集合按照每size个分一组</p>
+     * <p>RandomAccess的List返回subList视图，其他集合只遍历一次，按迭代顺序复制到各组</p>
+     *
+     * @param collection 要分隔的集合
+     * @param size       每组的大小
+     * @return 分组后的集合
+     */
+    public static <T> List<List<T>> partition(Collection<T> collection, int size) {
+        checkSize(size);
+        if (collection instanceof List && collection instanceof RandomAccess) {
+            return new Partition<>((List<T>) collection, size);
+        }
+        return chunk(collection, size);
+    }
+
+    /**
+     * 把迭代器按每size个惰性地分批，内存中只保留当前一批
+     *
+     * @param iterator 源迭代器，可以是数据库游标或文件读取等无界数据
+     * @param size     每批的大小
+     * @return 按批次读取的迭代器
+     */
+    public static <T> Iterator<List<T>> batches(Iterator<? extends T> iterator, int size) {
+        return new BatchIterator<>(iterator, size);
+    }
+
+    /**
+     * 把迭代器按大小和时间惰性地分批
+     *
+     * @param iterator    源迭代器
+     * @param size        每批的最大大小
+     * @param maxWait     每批最长等待时间，小于等于0表示不限时间
+     * @param unit        等待时间的单位
+     * @param reuseBuffer 是否复用同一个缓冲区，复用时上一批必须在读取下一批之前处理完
+     * @return 按批次读取的迭代器
+     * @see BatchIterator
+     */
+    public static <T> Iterator<List<T>> batches(Iterator<? extends T> iterator, int size, long maxWait, TimeUnit unit, boolean reuseBuffer) {
+        return new BatchIterator<>(iterator, size, maxWait, unit, reuseBuffer);
+    }
+
+    /**
+     * 把Spliterator按每size个惰性地分批
+     *
+     * @param spliterator 源Spliterator
+     * @param size        每批的大小
+     * @return 按批次读取的串行流
+     */
+    public static <T> Stream<List<T>> batches(Spliterator<? extends T> spliterator, int size) {
+        return batches(Spliterators.iterator(spliterator), size, 0, TimeUnit.NANOSECONDS, false, null);
+    }
+
+    /**
+     * 把Stream按每size个惰性地分批，关闭返回的流时会关闭源流
+     *
+     * @param stream 源流
+     * @param size   每批的大小
+     * @return 按批次读取的串行流
+     */
+    public static <T> Stream<List<T>> batches(Stream<? extends T> stream, int size) {
+        return batches(stream, size, 0, TimeUnit.NANOSECONDS, false);
+    }
+
+    /**
+     * 把Stream按大小和时间惰性地分批，关闭返回的流时会关闭源流
+     *
+     * @param stream      源流
+     * @param size        每批的最大大小
+     * @param maxWait     每批最长等待时间，小于等于0表示不限时间
+     * @param unit        等待时间的单位
+     * @param reuseBuffer 是否复用同一个缓冲区，复用时上一批必须在读取下一批之前处理完
+     * @return 按批次读取的串行流
+     */
+    public static <T> Stream<List<T>> batches(Stream<? extends T> stream, int size, long maxWait, TimeUnit unit, boolean reuseBuffer) {
+        return batches(Spliterators.iterator(stream.spliterator()), size, maxWait, unit, reuseBuffer, stream);
+    }
+
+    private static <T> Stream<List<T>> batches(Iterator<? extends T> iterator, int size, long maxWait, TimeUnit unit, boolean reuseBuffer, Stream<?> source) {
+        final BatchIterator<T> batchIterator = new BatchIterator<>(iterator, size, maxWait, unit, reuseBuffer);
+        final Stream<List<T>> stream = StreamSupport.stream(batchIterator.spliterator(), false);
+        return source == null ? stream : stream.onClose(source::close);
+    }
+
+    /**
+     * 单次遍历，把集合按迭代顺序复制到若干预设大小的组中
+     */
+    private static <T> List<List<T>> chunk(Collection<T> collection, int size) {
+        final int total = collection.size();
+        final List<List<T>> result = new ArrayList<>(groups(total, size));
+        final Iterator<T> iterator = collection.iterator();
+        int remaining = total;
+        while (iterator.hasNext()) {
+            final List<T> chunk = new ArrayList<>(Math.max(1, Math.min(size, remaining)));
+            while (chunk.size() < size && iterator.hasNext()) {
+                chunk.add(iterator.next());
+            }
+            remaining -= chunk.size();
+            result.add(chunk);
+        }
+        return result;
+    }
+
+    private static int hashShard(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        final int h = key.hashCode();
+        // 与HashMap相同的扰动，避免低位相同的哈希值集中到同一组
+        return h ^ (h >>> 16);
+    }
+
+    private static <K> int shardOf(K key, int shards, ToIntFunction<? super K> shardFunction) {
+        return Math.floorMod(shardFunction.applyAsInt(key), shards);
+    }
+
+    /**
+     * 放入expected个元素不需要扩容的HashMap初始容量
+     */
+    private static int capacity(int expected) {
+        return (int) (expected / 0.75f) + 1;
+    }
+
+    /**
+     * total个元素按每size个分组的组数，size接近Integer.MAX_VALUE时不会溢出
+     */
+    private static int groups(int total, int size) {
+        return total / size + (total % size == 0 ? 0 : 1);
+    }
+
+    private static void checkSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("分组大小必须大于0: " + size);
+        }
+    }
+
+    /**
+     * Map的分组视图，只包含分组函数结果为index的键
+     */
+    private static final class ShardView<K, V> extends AbstractMap<K, V> {
+        private final Map<K, V> map;
+        private final int shards;
+        private final int index;
+        private final ToIntFunction<? super K> shardFunction;
+
+        private ShardView(Map<K, V> map, int shards, int index, ToIntFunction<? super K> shardFunction) {
+            this.map = map;
+            this.shards = shards;
+            this.index = index;
+            this.shardFunction = shardFunction;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean owns(Object key) {
+            try {
+                return shardOf((K) key, shards, shardFunction) == index;
+            } catch (ClassCastException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public V get(Object key) {
+            return owns(key) ? map.get(key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return owns(key) && map.containsKey(key);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return map.entrySet().stream().filter(entry -> owns(entry.getKey())).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return (int) map.keySet().stream().filter(ShardView.this::owns).count();
+                }
+            };
+        }
+    }
+
+    /**
+     * 惰性的分组视图，每次访问时返回原List的subList
+     */
+    private static final class Partition<T> extends AbstractList<List<T>> implements RandomAccess {
+        private final List<T> list;
+        private final int size;
+
+        private Partition(List<T> list, int size) {
+            this.list = list;
+            this.size = size;
+        }
+
+        @Override
+        public List<T> get(int index) {
+            final int count = size();
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+            final int start = index * size;
+            return list.subList(start, Math.min(start + size, list.size()));
+        }
+
+        @Override
+        public int size() {
+            return groups(list.size(), size);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return list.isEmpty();
+        }
     }
 }
@@ -0,0 +1,172 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>以任意个数(2个及以上)的键为组合键的Map，键的个数在创建时确定</p>
+ * <p>组合键以数组传入，只在调用期间读取，不会被保存，调用方可以重复使用同一个数组；
+ * 长度小于键的个数的数组表示前缀，用于前缀查询、统计、遍历和删除。
+ * 两个到四个键时优先使用{@link DoubleKeyMap}、{@link TripleKeyMap}或{@link QuadKeyMap}</p>
+ * <p>{@link #size()}返回的是键值对个数</p>
+ *
+ * @param <V> 值
+ * @author zxh
+ */
+public class CompositeKeyMap<V> implements Serializable {
+    private static final long serialVersionUID = -3390847726410561907L;
+
+    private final CompositeKeyTable<V> table;
+
+    /**
+     * @param arity 键的个数
+     */
+    public CompositeKeyMap(int arity) {
+        this(arity, 0);
+    }
+
+    /**
+     * @param arity 键的个数
+     * @param size  预计的键值对个数
+     */
+    public CompositeKeyMap(int arity, int size) {
+        table = new CompositeKeyTable<>(arity, size);
+    }
+
+    public int arity() {
+        return table.arity();
+    }
+
+    public V get(Object... keys) {
+        final int e = find(keys);
+        return e < 0 ? null : table.value(e);
+    }
+
+    /**
+     * @return 旧值，不存在时为null
+     */
+    public V put(Object[] keys, V v) {
+        checkLength(keys, table.arity());
+        return table.put(part(keys, 0), part(keys, 1), part(keys, 2), part(keys, 3), keys, v, false);
+    }
+
+    /**
+     * @return 已存在的值，不存在或为null时放入v并返回null
+     */
+    public V putIfAbsent(Object[] keys, V v) {
+        checkLength(keys, table.arity());
+        return table.put(part(keys, 0), part(keys, 1), part(keys, 2), part(keys, 3), keys, v, true);
+    }
+
+    /**
+     * @return 被删除的值，不存在时为null
+     */
+    public V remove(Object... keys) {
+        checkLength(keys, table.arity());
+        return table.remove(part(keys, 0), part(keys, 1), part(keys, 2), part(keys, 3), keys);
+    }
+
+    public boolean containsKey(Object... keys) {
+        return find(keys) >= 0;
+    }
+
+    /**
+     * @param prefix 前缀，长度范围为[1, arity)
+     */
+    public boolean containsPrefix(Object... prefix) {
+        checkPrefix(prefix);
+        return table.first(prefix.length, part(prefix, 0), part(prefix, 1), part(prefix, 2), part(prefix, 3), prefix) >= 0;
+    }
+
+    /**
+     * @param prefix 前缀，长度范围为[1, arity)
+     * @return 前缀下的键值对个数
+     */
+    public int count(Object... prefix) {
+        checkPrefix(prefix);
+        return table.count(prefix.length, part(prefix, 0), part(prefix, 1), part(prefix, 2), part(prefix, 3), prefix);
+    }
+
+    /**
+     * 删除前缀下的所有键值对
+     *
+     * @param prefix 前缀，长度范围为[1, arity)
+     * @return 删除的个数
+     */
+    public int removePrefix(Object... prefix) {
+        checkPrefix(prefix);
+        return table.removePrefix(prefix.length, part(prefix, 0), part(prefix, 1), part(prefix, 2), part(prefix, 3), prefix);
+    }
+
+    /**
+     * @return 键值对个数
+     */
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isEmpty() {
+        return table.size() == 0;
+    }
+
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * 遍历所有键值对，遍历时不能修改
+     *
+     * @param consumer 接收组合键和值，组合键数组在每次回调时重复使用，需要保留时应复制
+     */
+    public void forEach(BiConsumer<Object[], ? super V> consumer) {
+        final Object[] keys = new Object[table.arity()];
+        for (int e = 0, size = table.size(); e < size; e++) {
+            fill(e, keys);
+            consumer.accept(keys, table.value(e));
+        }
+    }
+
+    /**
+     * 遍历前缀下的键值对，遍历时不能修改
+     *
+     * @param prefix   前缀，长度范围为[1, arity)
+     * @param consumer 接收完整的组合键和值，组合键数组在每次回调时重复使用，需要保留时应复制
+     */
+    public void forEachWithPrefix(Object[] prefix, BiConsumer<Object[], ? super V> consumer) {
+        checkPrefix(prefix);
+        final int length = prefix.length;
+        final Object[] keys = new Object[table.arity()];
+        for (int e = table.first(length, part(prefix, 0), part(prefix, 1), part(prefix, 2), part(prefix, 3), prefix);
+             e >= 0; e = table.next(length, e)) {
+            fill(e, keys);
+            consumer.accept(keys, table.value(e));
+        }
+    }
+
+    private int find(Object[] keys) {
+        checkLength(keys, table.arity());
+        return table.find(part(keys, 0), part(keys, 1), part(keys, 2), part(keys, 3), keys);
+    }
+
+    private void fill(int e, Object[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = table.key(e, i);
+        }
+    }
+
+    private void checkPrefix(Object[] prefix) {
+        if (prefix == null || prefix.length < 1 || prefix.length >= table.arity()) {
+            throw new IllegalArgumentException("前缀的长度必须在1和" + (table.arity() - 1) + "之间");
+        }
+    }
+
+    private static void checkLength(Object[] keys, int arity) {
+        if (keys == null || keys.length != arity) {
+            throw new IllegalArgumentException("键的个数必须为" + arity);
+        }
+    }
+
+    private static Object part(Object[] keys, int i) {
+        return i < keys.length ? keys[i] : null;
+    }
+}
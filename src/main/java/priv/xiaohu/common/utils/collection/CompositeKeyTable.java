@@ -0,0 +1,535 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>任意个数(2个及以上)键的组合键哈希表，{@link TripleKeyMap}、{@link QuadKeyMap}和{@link CompositeKeyMap}的底层实现</p>
+ * <p>键值对按下标紧密存放在平行数组中(每个键值对占keys中arity个位置)，删除时把最后一个键值对移动到空位。
+ * 完整的组合键由一个只保存下标的开放寻址表索引；每个前缀长度(1到arity-1)另有一个前缀表，
+ * 把前缀映射到该前缀下所有键值对组成的双向链表，前缀查询只访问该前缀下的键值对</p>
+ * <p>键的各个部分直接作为参数传入：前4个部分用k1到k4传入，更多部分从more数组中按绝对下标读取，
+ * 不需要为组合键创建对象。哈希值每加入一个部分混合一次，避免相近的hashCode(如连续的数字或字符串)组合后冲突</p>
+ * <p>不是线程安全的，与HashMap相同，没有修改时可以被多个线程同时读取</p>
+ *
+ * @param <V> 值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+final class CompositeKeyTable<V> implements Serializable {
+    private static final long serialVersionUID = 4620315812367794512L;
+
+    private static final int NONE = -1;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int arity;
+    /**
+     * 第e个键值对的键位于keys[e * arity]到keys[e * arity + arity - 1]
+     */
+    private transient Object[] keys;
+    private transient Object[] values;
+    private transient int[] hashes;
+    private transient int size;
+    /**
+     * 完整组合键的开放寻址表，每个槽占两个int：下标+1(0表示空位)和哈希值，比较哈希值时不需要访问hashes
+     */
+    private transient int[] index;
+    /**
+     * 按前缀长度-1分组：同一前缀下的链表指针，前缀表(保存链表头下标+1)和前缀下的键值对个数
+     */
+    private transient int[][] next;
+    private transient int[][] prev;
+    private transient int[][] prefixIndex;
+    private transient int[][] prefixCounts;
+    private transient int[] prefixSizes;
+
+    CompositeKeyTable(int arity, int expectedSize) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("键的个数必须大于等于2: " + arity);
+        }
+        this.arity = arity;
+        init(expectedSize);
+    }
+
+    private void init(int expectedSize) {
+        final int capacity = Math.max(expectedSize, MIN_CAPACITY);
+        keys = new Object[capacity * arity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        index = new int[tableSizeFor(capacity) * 2];
+        next = new int[arity - 1][capacity];
+        prev = new int[arity - 1][capacity];
+        prefixIndex = new int[arity - 1][MIN_CAPACITY * 2];
+        prefixCounts = new int[arity - 1][MIN_CAPACITY * 2];
+        prefixSizes = new int[arity - 1];
+    }
+
+    int arity() {
+        return arity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object key(int entry, int part) {
+        return keys[entry * arity + part];
+    }
+
+    V value(int entry) {
+        return (V) values[entry];
+    }
+
+    V setValue(int entry, V v) {
+        final V old = (V) values[entry];
+        values[entry] = v;
+        return old;
+    }
+
+    /**
+     * @return 键值对下标，不存在时返回-1
+     */
+    int find(Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        final int hash = hash(arity, k1, k2, k3, k4, more);
+        final int mask = (index.length >> 1) - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int e = index[slot << 1] - 1;
+            if (e < 0) {
+                return NONE;
+            }
+            if (index[(slot << 1) + 1] == hash && matches(e, arity, k1, k2, k3, k4, more)) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * @return 旧值，不存在时返回null
+     */
+    V put(Object k1, Object k2, Object k3, Object k4, Object[] more, V v, boolean onlyIfAbsent) {
+        final int found = find(k1, k2, k3, k4, more);
+        if (found >= 0) {
+            final V old = (V) values[found];
+            if (!onlyIfAbsent || old == null) {
+                values[found] = v;
+            }
+            return old;
+        }
+        ensureCapacity(size + 1);
+        final int e = size++;
+        final int base = e * arity;
+        for (int i = 0; i < arity; i++) {
+            keys[base + i] = part(i, k1, k2, k3, k4, more);
+        }
+        values[e] = v;
+        hashes[e] = hash(arity, k1, k2, k3, k4, more);
+        insertIndex(index, e, hashes[e]);
+        for (int length = 1; length < arity; length++) {
+            link(length, e);
+        }
+        return null;
+    }
+
+    /**
+     * @return 被删除的值，不存在时返回null
+     */
+    V remove(Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        final int e = find(k1, k2, k3, k4, more);
+        if (e < 0) {
+            return null;
+        }
+        final V old = (V) values[e];
+        removeEntry(e);
+        return old;
+    }
+
+    /**
+     * @param length 前缀长度，范围为[1, arity)
+     * @return 前缀下第一个键值对的下标，前缀不存在时返回-1
+     */
+    int first(int length, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        final int slot = prefixSlot(length, k1, k2, k3, k4, more);
+        return slot < 0 ? NONE : prefixIndex[length - 1][slot] - 1;
+    }
+
+    /**
+     * @return 同一长度前缀下的下一个键值对，没有时返回-1
+     */
+    int next(int length, int entry) {
+        return next[length - 1][entry];
+    }
+
+    int count(int length, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        final int slot = prefixSlot(length, k1, k2, k3, k4, more);
+        return slot < 0 ? 0 : prefixCounts[length - 1][slot];
+    }
+
+    /**
+     * 删除前缀下的所有键值对
+     *
+     * @return 删除的个数
+     */
+    int removePrefix(int length, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        int removed = 0;
+        int e;
+        while ((e = first(length, k1, k2, k3, k4, more)) >= 0) {
+            removeEntry(e);
+            removed++;
+        }
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0, size * arity, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(index, 0);
+        for (int i = 0; i < arity - 1; i++) {
+            Arrays.fill(prefixIndex[i], 0);
+            Arrays.fill(prefixCounts[i], 0);
+            prefixSizes[i] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * 写入格式：int 键值对个数, 每个键值对的arity个键和值
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int e = 0; e < size; e++) {
+            for (int i = 0; i < arity; i++) {
+                out.writeObject(keys[e * arity + i]);
+            }
+            out.writeObject(values[e]);
+        }
+    }
+
+    /**
+     * 哈希值可能与写入时不同，读取后重新建立索引
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int count = in.readInt();
+        init(count);
+        final Object[] parts = new Object[arity];
+        for (int e = 0; e < count; e++) {
+            for (int i = 0; i < arity; i++) {
+                parts[i] = in.readObject();
+            }
+            put(parts[0], parts[1], arity > 2 ? parts[2] : null, arity > 3 ? parts[3] : null, parts, (V) in.readObject(), false);
+        }
+    }
+
+    private void removeEntry(int e) {
+        deleteIndexSlot(slotOf(e));
+        for (int length = 1; length < arity; length++) {
+            unlink(length, e);
+        }
+        final int last = --size;
+        if (e != last) {
+            relocate(last, e);
+        }
+        Arrays.fill(keys, last * arity, last * arity + arity, null);
+        values[last] = null;
+    }
+
+    /**
+     * 把键值对from移动到空位to，并更新索引和链表中指向它的位置
+     */
+    private void relocate(int from, int to) {
+        System.arraycopy(keys, from * arity, keys, to * arity, arity);
+        values[to] = values[from];
+        hashes[to] = hashes[from];
+        index[slotOf(from) << 1] = to + 1;
+        for (int length = 1; length < arity; length++) {
+            final int[] nx = next[length - 1];
+            final int[] pv = prev[length - 1];
+            nx[to] = nx[from];
+            pv[to] = pv[from];
+            if (pv[to] >= 0) {
+                nx[pv[to]] = to;
+            } else {
+                prefixIndex[length - 1][prefixSlotOf(length, to)] = to + 1;
+            }
+            if (nx[to] >= 0) {
+                pv[nx[to]] = to;
+            }
+        }
+    }
+
+    /**
+     * 把键值对插入到前缀链表的头部
+     */
+    private void link(int length, int e) {
+        final int[] table = prefixIndex[length - 1];
+        final int[] counts = prefixCounts[length - 1];
+        final int[] nx = next[length - 1];
+        final int[] pv = prev[length - 1];
+        final int slot = prefixSlotOf(length, e);
+        pv[e] = NONE;
+        if (slot >= 0) {
+            final int head = table[slot] - 1;
+            nx[e] = head;
+            pv[head] = e;
+            table[slot] = e + 1;
+            counts[slot]++;
+            return;
+        }
+        nx[e] = NONE;
+        if ((prefixSizes[length - 1] + 1) * 2 > table.length) {
+            resizePrefix(length);
+        }
+        final int free = freeSlot(prefixIndex[length - 1], prefixHash(length, e));
+        prefixIndex[length - 1][free] = e + 1;
+        prefixCounts[length - 1][free] = 1;
+        prefixSizes[length - 1]++;
+    }
+
+    private void unlink(int length, int e) {
+        final int[] nx = next[length - 1];
+        final int[] pv = prev[length - 1];
+        if (pv[e] >= 0) {
+            nx[pv[e]] = nx[e];
+            prefixCounts[length - 1][prefixSlotOf(length, e)]--;
+        } else {
+            final int slot = prefixSlotOf(length, e);
+            if (nx[e] >= 0) {
+                prefixIndex[length - 1][slot] = nx[e] + 1;
+                prefixCounts[length - 1][slot]--;
+            } else {
+                deleteSlot(prefixIndex[length - 1], prefixCounts[length - 1], slot, length);
+                prefixSizes[length - 1]--;
+            }
+        }
+        if (nx[e] >= 0) {
+            pv[nx[e]] = pv[e];
+        }
+    }
+
+    /**
+     * @return 完整组合键的索引中指向键值对e的槽
+     */
+    private int slotOf(int e) {
+        final int mask = (index.length >> 1) - 1;
+        int slot = hashes[e] & mask;
+        while (index[slot << 1] != e + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return 与键值对e的前length个部分相同的前缀所在的槽，不存在时返回-1
+     */
+    private int prefixSlotOf(int length, int e) {
+        final int[] table = prefixIndex[length - 1];
+        final int mask = table.length - 1;
+        for (int slot = prefixHash(length, e) & mask; ; slot = (slot + 1) & mask) {
+            final int head = table[slot] - 1;
+            if (head < 0) {
+                return NONE;
+            }
+            if (samePrefix(head, e, length)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean samePrefix(int a, int b, int length) {
+        final int baseA = a * arity;
+        final int baseB = b * arity;
+        for (int i = 0; i < length; i++) {
+            if (!Objects.equals(keys[baseA + i], keys[baseB + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int prefixSlot(int length, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        final int[] table = prefixIndex[length - 1];
+        final int mask = table.length - 1;
+        for (int slot = hash(length, k1, k2, k3, k4, more) & mask; ; slot = (slot + 1) & mask) {
+            final int head = table[slot] - 1;
+            if (head < 0) {
+                return NONE;
+            }
+            if (matches(head, length, k1, k2, k3, k4, more)) {
+                return slot;
+            }
+        }
+    }
+
+    private int prefixHash(int length, int e) {
+        int h = 1;
+        final int base = e * arity;
+        for (int i = 0; i < length; i++) {
+            h = mix(31 * h + Objects.hashCode(keys[base + i]));
+        }
+        return h + length;
+    }
+
+    /**
+     * 删除开放寻址表中的槽，并把同一探测链上后面的元素前移
+     *
+     * @param counts 与槽对应的计数
+     * @param length 前缀长度
+     */
+    private void deleteSlot(int[] table, int[] counts, int slot, int length) {
+        final int mask = table.length - 1;
+        int hole = slot;
+        int cursor = slot;
+        while (true) {
+            cursor = (cursor + 1) & mask;
+            final int e = table[cursor] - 1;
+            if (e < 0) {
+                break;
+            }
+            final int ideal = prefixHash(length, e) & mask;
+            if (((cursor - ideal) & mask) >= ((cursor - hole) & mask)) {
+                table[hole] = table[cursor];
+                counts[hole] = counts[cursor];
+                hole = cursor;
+            }
+        }
+        table[hole] = 0;
+        counts[hole] = 0;
+    }
+
+    /**
+     * 与{@link #deleteSlot(int[], int[], int, int)}相同，用于完整组合键的索引
+     */
+    private void deleteIndexSlot(int slot) {
+        final int mask = (index.length >> 1) - 1;
+        int hole = slot;
+        int cursor = slot;
+        while (true) {
+            cursor = (cursor + 1) & mask;
+            if (index[cursor << 1] == 0) {
+                break;
+            }
+            final int ideal = index[(cursor << 1) + 1] & mask;
+            if (((cursor - ideal) & mask) >= ((cursor - hole) & mask)) {
+                index[hole << 1] = index[cursor << 1];
+                index[(hole << 1) + 1] = index[(cursor << 1) + 1];
+                hole = cursor;
+            }
+        }
+        index[hole << 1] = 0;
+    }
+
+    private static void insertIndex(int[] index, int e, int hash) {
+        final int mask = (index.length >> 1) - 1;
+        int slot = hash & mask;
+        while (index[slot << 1] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot << 1] = e + 1;
+        index[(slot << 1) + 1] = hash;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > values.length) {
+            final int capacity = Math.max(values.length * 2, required);
+            keys = Arrays.copyOf(keys, capacity * arity);
+            values = Arrays.copyOf(values, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            for (int i = 0; i < arity - 1; i++) {
+                next[i] = Arrays.copyOf(next[i], capacity);
+                prev[i] = Arrays.copyOf(prev[i], capacity);
+            }
+        }
+        if (required * 2 > index.length >> 1) {
+            final int[] rebuilt = new int[index.length * 2];
+            for (int e = 0; e < size; e++) {
+                insertIndex(rebuilt, e, hashes[e]);
+            }
+            index = rebuilt;
+        }
+    }
+
+    private void resizePrefix(int length) {
+        final int[] oldTable = prefixIndex[length - 1];
+        final int[] oldCounts = prefixCounts[length - 1];
+        final int[] table = new int[oldTable.length * 2];
+        final int[] counts = new int[table.length];
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] != 0) {
+                final int slot = freeSlot(table, prefixHash(length, oldTable[i] - 1));
+                table[slot] = oldTable[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+        prefixIndex[length - 1] = table;
+        prefixCounts[length - 1] = counts;
+    }
+
+    private boolean matches(int e, int length, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        final int base = e * arity;
+        for (int i = 0; i < length; i++) {
+            if (!Objects.equals(keys[base + i], part(i, k1, k2, k3, k4, more))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object part(int i, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        switch (i) {
+            case 0:
+                return k1;
+            case 1:
+                return k2;
+            case 2:
+                return k3;
+            case 3:
+                return k4;
+            default:
+                return more[i];
+        }
+    }
+
+    /**
+     * @return 前length个部分的哈希值
+     */
+    private static int hash(int length, Object k1, Object k2, Object k3, Object k4, Object[] more) {
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = mix(31 * h + Objects.hashCode(part(i, k1, k2, k3, k4, more)));
+        }
+        return h + length;
+    }
+
+    private static int freeSlot(int[] table, int hash) {
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * MurmurHash3的32位混合函数
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return 不小于2 * size的2的幂
+     */
+    private static int tableSizeFor(int size) {
+        return Integer.highestOneBit(Math.max(2 * size - 1, 1)) << 1;
+    }
+}
@@ -0,0 +1,379 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * <p>线程安全的双键Map集合</p>
+ * <p>主键和副键两层都使用{@link ConcurrentHashMap}，读操作不加锁；
+ * 对同一对(主键, 副键)的写操作是原子的，只锁住副键所在的桶，不同主键之间互不影响</p>
+ * <p>副键Map只在第一次放入该主键时创建，之后即使副键全部删除也会保留，直到调用{@link #remove(Object)}或{@link #clear()}</p>
+ * <p>与{@link ConcurrentHashMap}相同，主键、副键和值都不能为null</p>
+ * <p>开启副键索引、布隆过滤器或排序视图等附加结构后，写操作在当前集合的锁中串行执行，附加结构始终与内容一致；
+ * 读取副键索引或排序视图的操作同样加锁，{@link #getPrimaryKeys(Object)}和{@link #transpose()}返回的是快照而不是视图。
+ * 布隆过滤器不加锁读取，误判为存在时仍然查找副键Map；没有对应附加结构的读操作不加锁。
+ * 取消所有附加结构后恢复为不加锁的写操作</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+public class ConcurrentDoubleKeyMap<K1, K2, V> extends DoubleKeyMap<K1, K2, V> {
+    private static final long serialVersionUID = -6102537453245613095L;
+
+    /**
+     * 是否有附加结构，为true时写操作持有当前集合的锁
+     */
+    private transient volatile boolean indexed;
+    /**
+     * 正在进行的不加锁的写操作个数，开启附加结构时等待它们完成后再遍历现有数据
+     */
+    private transient LongAdder writers = new LongAdder();
+
+    public ConcurrentDoubleKeyMap() {
+        this(DEFUALT_SIZE);
+    }
+
+    public ConcurrentDoubleKeyMap(int size) {
+        super(false, new ConcurrentHashMap<>(size));
+    }
+
+    @Override
+    protected Map<K2, V> newSubMap() {
+        return new ConcurrentHashMap<>();
+    }
+
+    @Override
+    protected Map<K2, V> newSubMap(int expectedSize) {
+        return new ConcurrentHashMap<>(expectedSize);
+    }
+
+    /**
+     * 传入的Map不是线程安全的，总是复制到新的副键Map中
+     */
+    @Override
+    protected Map<K2, V> adoptSubMap(Map<K2, V> subMap) {
+        final Map<K2, V> row = newSubMap(subMap.size());
+        row.putAll(subMap);
+        return row;
+    }
+
+    /**
+     * 获取主键对应的副键Map，不存在时原子地创建
+     */
+    private Map<K2, V> subMap(K1 k1) {
+        final Map<K1, Map<K2, V>> map = toMap();
+        // 先不加锁地读取，已存在时避免computeIfAbsent锁住桶
+        final Map<K2, V> subMap = map.get(k1);
+        return subMap != null ? subMap : map.computeIfAbsent(k1, k -> newSubMap());
+    }
+
+    /**
+     * 没有附加结构时不加锁地执行lockFree，只登记为进行中的写操作；
+     * 有附加结构时持有锁执行locked，由父类的实现通知附加结构
+     */
+    private <R> R write(Supplier<R> lockFree, Supplier<R> locked) {
+        if (!indexed) {
+            final LongAdder writers = this.writers;
+            writers.increment();
+            try {
+                // 登记之后再检查一次，保证开启附加结构时能等到这次写操作
+                if (!indexed) {
+                    return lockFree.get();
+                }
+            } finally {
+                writers.decrement();
+            }
+        }
+        synchronized (this) {
+            return locked.get();
+        }
+    }
+
+    /**
+     * 切换为加锁的写操作，并等待已经开始的不加锁的写操作完成，调用前必须持有当前集合的锁
+     */
+    private void lockWrites() {
+        indexed = true;
+        // 反序列化时父类重建附加结构，此时还没有其他线程
+        if (writers != null) {
+            while (writers.sum() != 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public synchronized DoubleKeyMap<K1, K2, V> indexSubKeys() {
+        lockWrites();
+        return super.indexSubKeys();
+    }
+
+    @Override
+    public synchronized DoubleKeyMap<K1, K2, V> enableBloomFilter(double falsePositiveRate) {
+        lockWrites();
+        return super.enableBloomFilter(falsePositiveRate);
+    }
+
+    @Override
+    public synchronized DoubleKeyMap<K1, K2, V> registerSortedView(Comparator<V> comparator) {
+        lockWrites();
+        return super.registerSortedView(comparator);
+    }
+
+    @Override
+    public synchronized DoubleKeyMap<K1, K2, V> registerSortedSubView(Comparator<V> comparator) {
+        lockWrites();
+        return super.registerSortedSubView(comparator);
+    }
+
+    @Override
+    public synchronized void unregisterSortedView(Comparator<V> comparator) {
+        super.unregisterSortedView(comparator);
+        indexed = hasListeners();
+    }
+
+    @Override
+    public Boolean put(K1 k1, K2 k2, V v) {
+        return write(() -> subMap(k1).put(k2, v) == v, () -> super.put(k1, k2, v));
+    }
+
+    @Override
+    public Boolean putIfAbsent(K1 k1, K2 k2, V v) {
+        // 与父类一致：值不存在时返回put的结果(旧值为null，不等于v)，存在时返回false
+        return write(() -> {
+            subMap(k1).putIfAbsent(k2, v);
+            return false;
+        }, () -> super.putIfAbsent(k1, k2, v));
+    }
+
+    @Override
+    public Boolean put(K1 k1, Map<K2, V> subMap) {
+        return write(() -> {
+            subMap(k1).putAll(subMap);
+            return true;
+        }, () -> super.put(k1, subMap));
+    }
+
+    @Override
+    public Boolean put(DoubleKeyMap<K1, K2, V> that) {
+        return write(() -> super.put(that), () -> super.put(that));
+    }
+
+    @Override
+    public Boolean putIfAbsent(DoubleKeyMap<K1, K2, V> that) {
+        return write(() -> super.putIfAbsent(that), () -> super.putIfAbsent(that));
+    }
+
+    @Override
+    public DoubleKeyMap<K1, K2, V> merge(DoubleKeyMap<K1, K2, V> that, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return write(() -> super.merge(that, remappingFunction), () -> super.merge(that, remappingFunction));
+    }
+
+    @Override
+    public DoubleKeyMap<K1, K2, V> parallelMerge(DoubleKeyMap<K1, K2, V> that, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return write(() -> super.parallelMerge(that, remappingFunction), () -> super.parallelMerge(that, remappingFunction));
+    }
+
+    @Override
+    public V computeIfAbsent(K1 k1, K2 k2, BiFunction<? super K1, ? super K2, ? extends V> mappingFunction) {
+        return write(() -> subMap(k1).computeIfAbsent(k2, k -> mappingFunction.apply(k1, k)),
+                () -> super.computeIfAbsent(k1, k2, mappingFunction));
+    }
+
+    @Override
+    public V merge(K1 k1, K2 k2, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return write(() -> subMap(k1).merge(k2, value, remappingFunction),
+                () -> super.merge(k1, k2, value, remappingFunction));
+    }
+
+    @Override
+    public Map<K1, Set<K2>> keys() {
+        final Map<K1, Set<K2>> keys = new HashMap<>();
+        toMap().forEach((k1, subMap) -> keys.put(k1, subMap.keySet()));
+        return keys;
+    }
+
+    @Override
+    public Map<K2, V> remove(K1 k1) {
+        return write(() -> super.remove(k1), () -> super.remove(k1));
+    }
+
+    @Override
+    public V remove(K1 k1, K2 k2) {
+        return write(() -> {
+            final Map<K2, V> subMap = get(k1);
+            return subMap == null ? null : subMap.remove(k2);
+        }, () -> super.remove(k1, k2));
+    }
+
+    /**
+     * 判断是否存在附加结构时不加锁，读到旧的状态也只是选择扫描或加锁后由父类重新判断，两种方式的结果都是正确的
+     */
+    @Override
+    public Boolean containsSubKey(K2 k2) {
+        if (!isSubKeyIndexed()) {
+            return scanSubKey(k2);
+        }
+        synchronized (this) {
+            return super.containsSubKey(k2);
+        }
+    }
+
+    /**
+     * @return 主键集合的快照
+     */
+    @Override
+    public Set<K1> getPrimaryKeys(K2 k2) {
+        if (!isSubKeyIndexed()) {
+            return scanPrimaryKeys(k2);
+        }
+        synchronized (this) {
+            return Collections.unmodifiableSet(new HashSet<>(super.getPrimaryKeys(k2)));
+        }
+    }
+
+    /**
+     * @return 转置后的只读快照，不随当前集合的修改而变化
+     */
+    @Override
+    public synchronized Map<K2, Map<K1, V>> transpose() {
+        final Map<K2, Map<K1, V>> transposed = super.transpose();
+        final Map<K2, Map<K1, V>> snapshot = new HashMap<>(transposed.size() * 4 / 3 + 1);
+        transposed.forEach((k2, column) -> snapshot.put(k2, Collections.unmodifiableMap(new HashMap<>(column))));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    public List<V> getSortedListOfAll(Comparator<V> comparator) {
+        if (!hasSortedViews()) {
+            return sortValues(comparator);
+        }
+        synchronized (this) {
+            return super.getSortedListOfAll(comparator);
+        }
+    }
+
+    @Override
+    public List<V> getSortedListOfSubKey(K1 k1, Comparator<V> comparator) {
+        if (!hasSortedViews()) {
+            return sortValues(k1, comparator);
+        }
+        synchronized (this) {
+            return super.getSortedListOfSubKey(k1, comparator);
+        }
+    }
+
+    @Override
+    public List<V> topK(int k, Comparator<V> comparator) {
+        if (!hasSortedViews()) {
+            checkK(k);
+            return scanTopK(k, comparator);
+        }
+        synchronized (this) {
+            return super.topK(k, comparator);
+        }
+    }
+
+    @Override
+    public List<V> topK(K1 k1, int k, Comparator<V> comparator) {
+        if (!hasSortedViews()) {
+            checkK(k);
+            return scanTopK(k1, k, comparator);
+        }
+        synchronized (this) {
+            return super.topK(k1, k, comparator);
+        }
+    }
+
+    @Override
+    public void clear() {
+        write(() -> {
+            super.clear();
+            return null;
+        }, () -> {
+            super.clear();
+            return null;
+        });
+    }
+
+    /**
+     * 通过游标删除或修改值与其他写操作一样，有附加结构时持有当前集合的锁
+     */
+    @Override
+    public DoubleKeyCursor<K1, K2, V> cursor() {
+        final DoubleKeyCursor<K1, K2, V> cursor = super.cursor();
+        return new DoubleKeyCursor<K1, K2, V>() {
+            @Override
+            public boolean advance() {
+                return cursor.advance();
+            }
+
+            @Override
+            public K1 k1() {
+                return cursor.k1();
+            }
+
+            @Override
+            public K2 k2() {
+                return cursor.k2();
+            }
+
+            @Override
+            public V value() {
+                return cursor.value();
+            }
+
+            @Override
+            public void remove() {
+                final Supplier<Void> remove = () -> {
+                    cursor.remove();
+                    return null;
+                };
+                write(remove, remove);
+            }
+
+            @Override
+            public V setValue(V v) {
+                final Supplier<V> setValue = () -> cursor.setValue(v);
+                return write(setValue, setValue);
+            }
+
+            @Override
+            public void reset() {
+                cursor.reset();
+            }
+        };
+    }
+
+    /**
+     * 并发修改时大小不固定，直接使用ConcurrentHashMap的Spliterator
+     */
+    @Override
+    public Spliterator<Map.Entry<K1, Map<K2, V>>> spliterator() {
+        return toMap().entrySet().spliterator();
+    }
+
+    @Override
+    Spliterator<Triple<K1, K2, V>> tripleSpliterator() {
+        return new TripleSpliterator<>(rowArray(), false, false);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        writers = new LongAdder();
+    }
+}
@@ -0,0 +1,175 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>按(主键, 副键)计数的线程安全计数矩阵，用于代替{@code DoubleKeyMap<K1, K2, Long>}统计事件次数</p>
+ * <p>每个(主键, 副键)对应一个分段计数器({@link StripedCounter})，累加不加锁，
+ * 多个线程同时累加同一个计数器时分散到不同的缓存行上，不会互相竞争。
+ * 两层都使用{@link ConcurrentHashMap}，计数器只在第一次累加时创建</p>
+ * <p>{@link #snapshot()}逐个读取计数器，不是某一时刻的精确快照，但每个计数器的值都是读取时已完成的累加之和；
+ * {@link #snapshotAndReset()}读取并清零，与之并发的累加要么计入本次快照，要么计入下一次，不会丢失</p>
+ * <p>删除计数器时，与删除并发的累加可能丢失。与{@link ConcurrentHashMap}相同，主键和副键不能为null</p>
+ * <pre>
+ * CounterMatrix&lt;String, String&gt; requests = new CounterMatrix&lt;&gt;();
+ * requests.increment(service, endpoint);
+ * // 定时上报
+ * DoubleKeyMap&lt;String, String, Long&gt; counts = requests.snapshotAndReset();
+ * </pre>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @author zxh
+ */
+public class CounterMatrix<K1, K2> {
+    private final ConcurrentHashMap<K1, ConcurrentHashMap<K2, StripedCounter>> rows = new ConcurrentHashMap<>();
+
+    public void increment(K1 k1, K2 k2) {
+        counter(k1, k2).add(1L);
+    }
+
+    public void increment(K1 k1, K2 k2, long delta) {
+        counter(k1, k2).add(delta);
+    }
+
+    public void decrement(K1 k1, K2 k2) {
+        counter(k1, k2).add(-1L);
+    }
+
+    /**
+     * @return 计数，不存在时为0
+     */
+    public long get(K1 k1, K2 k2) {
+        final Map<K2, StripedCounter> row = rows.get(k1);
+        final StripedCounter counter = row == null ? null : row.get(k2);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    /**
+     * 读取计数并清零，计数器保留
+     *
+     * @return 清零前的计数，不存在时为0
+     */
+    public long getAndReset(K1 k1, K2 k2) {
+        final Map<K2, StripedCounter> row = rows.get(k1);
+        final StripedCounter counter = row == null ? null : row.get(k2);
+        return counter == null ? 0L : counter.sumThenReset();
+    }
+
+    /**
+     * @return 主键下所有计数之和
+     */
+    public long sum(K1 k1) {
+        final Map<K2, StripedCounter> row = rows.get(k1);
+        long sum = 0L;
+        if (row != null) {
+            for (StripedCounter counter : row.values()) {
+                sum += counter.sum();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return 所有计数之和
+     */
+    public long sum() {
+        long sum = 0L;
+        for (Map<K2, StripedCounter> row : rows.values()) {
+            for (StripedCounter counter : row.values()) {
+                sum += counter.sum();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return 所有计数器的当前值
+     */
+    public DoubleKeyMap<K1, K2, Long> snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * 读取所有计数器并清零，计数器保留，适合按周期上报增量
+     *
+     * @return 清零前的值
+     */
+    public DoubleKeyMap<K1, K2, Long> snapshotAndReset() {
+        return collect(true);
+    }
+
+    /**
+     * @return 被删除的计数器的值，不存在时为0
+     */
+    public long remove(K1 k1, K2 k2) {
+        final Map<K2, StripedCounter> row = rows.get(k1);
+        final StripedCounter counter = row == null ? null : row.remove(k2);
+        return counter == null ? 0L : counter.sumThenReset();
+    }
+
+    /**
+     * @return 主键下被删除的计数之和
+     */
+    public long remove(K1 k1) {
+        final Map<K2, StripedCounter> row = rows.remove(k1);
+        long sum = 0L;
+        if (row != null) {
+            for (StripedCounter counter : row.values()) {
+                sum += counter.sumThenReset();
+            }
+        }
+        return sum;
+    }
+
+    public boolean containsKey(K1 k1, K2 k2) {
+        final Map<K2, StripedCounter> row = rows.get(k1);
+        return row != null && row.containsKey(k2);
+    }
+
+    /**
+     * @return 计数器个数
+     */
+    public int size() {
+        int size = 0;
+        for (Map<K2, StripedCounter> row : rows.values()) {
+            size += row.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        rows.clear();
+    }
+
+    /**
+     * 遍历所有计数器的当前值
+     */
+    public void forEach(TriConsumer<? super K1, ? super K2, Long> consumer) {
+        rows.forEach((k1, row) -> row.forEach((k2, counter) -> consumer.accept(k1, k2, counter.sum())));
+    }
+
+    private DoubleKeyMap<K1, K2, Long> collect(boolean reset) {
+        final DoubleKeyMap<K1, K2, Long> result = new DoubleKeyMap<>(rows.size());
+        rows.forEach((k1, row) -> {
+            final Map<K2, Long> values = result.newSubMap(row.size());
+            row.forEach((k2, counter) -> values.put(k2, reset ? counter.sumThenReset() : counter.sum()));
+            result.put(k1, values);
+        });
+        return result;
+    }
+
+    /**
+     * 获取计数器，不存在时原子地创建
+     */
+    private StripedCounter counter(K1 k1, K2 k2) {
+        // 先不加锁地读取，已存在时避免computeIfAbsent锁住桶
+        ConcurrentHashMap<K2, StripedCounter> row = rows.get(k1);
+        if (row == null) {
+            row = rows.computeIfAbsent(k1, k -> new ConcurrentHashMap<>());
+        }
+        final StripedCounter counter = row.get(k2);
+        return counter != null ? counter : row.computeIfAbsent(k2, k -> new StripedCounter());
+    }
+}
@@ -0,0 +1,69 @@
+package priv.xiaohu.common.utils.collection;
+
+/**
+ * <p>逐个访问双键Map中键值对的游标</p>
+ * <p>游标本身就是当前位置，前进时不创建任何对象，可以随时停止遍历，也可以在遍历中删除或修改当前键值对。
+ * 调用{@link #reset()}后可以重复使用同一个游标</p>
+ * <pre>
+ * DoubleKeyCursor&lt;K1, K2, V&gt; cursor = map.cursor();
+ * while (cursor.advance()) {
+ *     if (expired(cursor.value())) {
+ *         cursor.remove();
+ *     }
+ * }
+ * </pre>
+ * <p>通过游标以外的方式修改集合后继续使用游标的结果不确定，{@link DoubleKeyMap}会尽量抛出{@link java.util.ConcurrentModificationException}</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+public interface DoubleKeyCursor<K1, K2, V> {
+
+    /**
+     * 移动到下一个键值对
+     *
+     * @return 是否还有键值对，返回false后游标不再指向任何键值对
+     */
+    boolean advance();
+
+    /**
+     * @return 当前键值对的主键
+     * @throws IllegalStateException 游标没有指向键值对
+     */
+    K1 k1();
+
+    /**
+     * @return 当前键值对的副键
+     * @throws IllegalStateException 游标没有指向键值对
+     */
+    K2 k2();
+
+    /**
+     * @return 当前键值对的值
+     * @throws IllegalStateException 游标没有指向键值对
+     */
+    V value();
+
+    /**
+     * 删除当前键值对，删除后需要调用{@link #advance()}才能继续访问
+     *
+     * @throws IllegalStateException 游标没有指向键值对
+     */
+    void remove();
+
+    /**
+     * 替换当前键值对的值
+     *
+     * @param v 新值
+     * @return 旧值
+     * @throws IllegalStateException 游标没有指向键值对
+     */
+    V setValue(V v);
+
+    /**
+     * 回到第一个键值对之前，以便重复使用
+     */
+    void reset();
+}
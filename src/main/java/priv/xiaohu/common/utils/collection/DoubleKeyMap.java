@@ -1,11 +1,17 @@
 package priv.xiaohu.common.utils.collection;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.util.Collections.sort;
 
@@ -24,7 +30,31 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
 	private Map<K1, Map<K2, V>> map;
 
     private boolean ordered;
-    private final static int DEFUALT_SIZE = 1 << 4;
+    protected final static int DEFUALT_SIZE = 1 << 4;
+    private static final String NULL_VALUE_MESSAGE = "注册了排序视图时值不能为null";
+
+    /**
+     * 修改监听器，没有附加结构时为null
+     */
+    private transient List<MutationListener<K1, K2, V>> listeners;
+    private transient SubKeyIndex<K1, K2, V> subKeyIndex;
+    /**
+     * ConcurrentDoubleKeyMap不加锁地读取过滤器，开启时必须安全发布
+     */
+    private transient volatile PairFilter<K1, K2, V> pairFilter;
+    /**
+     * 布隆过滤器的误判率，为0时没有开启，反序列化后据此重建
+     */
+    private double pairFilterRate;
+    /**
+     * 反序列化后据此重建副键索引
+     */
+    private boolean subKeyIndexed;
+    /**
+     * 已注册的排序视图，比较器 → 视图
+     */
+    private transient Map<Comparator<V>, SortedView<K1, K2, V>> sortedViews;
+    private transient Map<Comparator<V>, SortedView<K1, K2, V>> sortedSubViews;
 
     public DoubleKeyMap() {
         this(false);
@@ -43,13 +73,68 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
         map = ordered ? new LinkedHashMap<>() : new HashMap<>(size);
     }
 
+    /**
+     * 供子类指定底层的主键Map
+     *
+     * @param ordered 是否有序
+     * @param map     主键到副键Map的映射
+     */
+    protected DoubleKeyMap(boolean ordered, Map<K1, Map<K2, V>> map) {
+        this.ordered = ordered;
+        this.map = map;
+    }
+
+    /**
+     * 创建主键对应的副键Map，子类可以替换为其他实现
+     *
+     * @return 新的副键Map
+     */
+    protected Map<K2, V> newSubMap() {
+        return ordered ? new LinkedHashMap<>() : new HashMap<>(DEFUALT_SIZE);
+    }
+
+    /**
+     * 创建能容纳expectedSize个副键而不扩容的副键Map，子类可以替换为其他实现
+     *
+     * @param expectedSize 预计的副键个数
+     * @return 新的副键Map
+     */
+    protected Map<K2, V> newSubMap(int expectedSize) {
+        final int capacity = Math.max(capacity(expectedSize), DEFUALT_SIZE);
+        return ordered ? new LinkedHashMap<>(capacity) : new HashMap<>(capacity);
+    }
+
+    /**
+     * {@link #put(Object, Map)}新增主键时作为副键Map保存的集合，子类可以替换为其他实现。
+     * 没有附加结构时直接使用传入的Map；有副键索引、布隆过滤器或排序视图时复制到新的副键Map中，
+     * 调用方之后修改传入的Map不会绕过附加结构
+     *
+     * @param subMap 传入的副键Map
+     * @return 作为副键Map保存的集合
+     */
+    protected Map<K2, V> adoptSubMap(Map<K2, V> subMap) {
+        if (listeners == null) {
+            return subMap;
+        }
+        final Map<K2, V> row = newSubMap(subMap.size());
+        row.putAll(subMap);
+        return row;
+    }
+
     public Boolean put(K1 k1, K2 k2, V v) {
+        checkValue(v);
         if (map.containsKey(k1) && map.get(k1) != null) {
-            return map.get(k1).put(k2, v) == v;
+            final Map<K2, V> subMap = map.get(k1);
+            final boolean existed = listeners != null && subMap.containsKey(k2);
+            final V old = subMap.put(k2, v);
+            firePut(k1, k2, existed, old, v);
+            return old == v;
         } else {
-            final Map<K2, V> subMap = ordered ? new LinkedHashMap<>() : new HashMap<>(DEFUALT_SIZE);
+            final Map<K2, V> subMap = newSubMap();
             subMap.put(k2, v);
-            return map.put(k1, subMap) == subMap;
+            final Boolean result = map.put(k1, subMap) == subMap;
+            firePut(k1, k2, false, null, v);
+            return result;
         }
     }
     
@@ -61,28 +146,218 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
     }
     
     public Boolean put(K1 k1, Map<K2, V> subMap) {
+        if (hasSortedViews() && subMap.containsValue(null)) {
+            throw new IllegalArgumentException(NULL_VALUE_MESSAGE);
+        }
         if (map.containsKey(k1) && map.get(k1) != null) {
-            map.get(k1).putAll(subMap);
+            if (listeners == null) {
+                map.get(k1).putAll(subMap);
+            } else {
+                subMap.forEach((k2, v) -> put(k1, k2, v));
+            }
         } else {
-            map.put(k1, subMap);
+            map.put(k1, adoptSubMap(subMap));
+            if (listeners != null) {
+                subMap.forEach((k2, v) -> firePut(k1, k2, false, null, v));
+            }
         }
         return true;
     }
     
+    /**
+     * 放入另一个集合的所有键值对，按整个副键Map合并，新建的副键Map按来源的大小预先分配容量
+     */
     public Boolean put(DoubleKeyMap<K1, K2, V> that) {
-        that.forEach((k1, k2, v) -> {
-            this.put(k1, k2, v);
-        });
+        mergeRows(that, null, false);
         return true;
     }
     
+    /**
+     * 放入另一个集合中当前不存在(或值为null)的键值对，按整个副键Map合并
+     */
     public Boolean putIfAbsent(DoubleKeyMap<K1, K2, V> that) {
-        that.forEach((k1, k2, v) -> {
-            this.putIfAbsent(k1, k2, v);
-        });
+        mergeRows(that, (old, v) -> old, false);
         return true;
     }
+
+    /**
+     * <p>合并另一个集合的所有键值对，两边都存在的键值对用函数决定结果</p>
+     * <p>与{@link Map#merge(Object, Object, BiFunction)}相同：当前值不存在时直接放入，否则放入函数的结果，
+     * 结果为null时删除该键值对。按整个副键Map合并，新建的副键Map按来源的大小预先分配容量</p>
+     *
+     * @param that              要合并的集合
+     * @param remappingFunction 合并旧值和新值的函数
+     * @return 当前集合
+     */
+    public DoubleKeyMap<K1, K2, V> merge(DoubleKeyMap<K1, K2, V> that, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        mergeRows(that, Objects.requireNonNull(remappingFunction), false);
+        return this;
+    }
+
+    /**
+     * <p>并行合并另一个集合的所有键值对，语义与{@link #merge(DoubleKeyMap, BiFunction)}相同</p>
+     * <p>先在调用线程中为每个主键找到或创建目标副键Map，再在ForkJoinPool.commonPool()中按键值对个数切分主键，
+     * 不同主键的副键Map互不相交，可以同时合并。remappingFunction会被多个线程同时调用。
+     * 存在副键索引或排序视图时退化为逐个放入</p>
+     *
+     * @param that              要合并的集合
+     * @param remappingFunction 合并旧值和新值的函数
+     * @return 当前集合
+     */
+    public DoubleKeyMap<K1, K2, V> parallelMerge(DoubleKeyMap<K1, K2, V> that, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        mergeRows(that, Objects.requireNonNull(remappingFunction), true);
+        return this;
+    }
+
+    /**
+     * <p>把多个集合合并成一个新集合，例如合并分区计算的结果</p>
+     * <p>先统计每个主键在所有集合中的副键个数，按统计结果一次性分配主键Map和副键Map的容量，合并过程中不会扩容</p>
+     *
+     * @param maps              要合并的集合
+     * @param remappingFunction 合并同一键值对的函数，参考{@link #merge(DoubleKeyMap, BiFunction)}
+     * @param parallel          是否并行合并每个集合
+     * @return 新集合
+     */
+    public static <K1, K2, V> DoubleKeyMap<K1, K2, V> mergeAll(Collection<? extends DoubleKeyMap<K1, K2, V>> maps,
+                                                               BiFunction<? super V, ? super V, ? extends V> remappingFunction,
+                                                               boolean parallel) {
+        Objects.requireNonNull(remappingFunction);
+        final Map<K1, int[]> counts = new HashMap<>();
+        for (DoubleKeyMap<K1, K2, V> part : maps) {
+            for (Map.Entry<K1, Map<K2, V>> row : part.map.entrySet()) {
+                counts.computeIfAbsent(row.getKey(), k -> new int[1])[0] += row.getValue().size();
+            }
+        }
+        final DoubleKeyMap<K1, K2, V> result = new DoubleKeyMap<>(capacity(counts.size()));
+        counts.forEach((k1, count) -> {
+            if (count[0] > 0) {
+                result.map.put(k1, result.newSubMap(count[0]));
+            }
+        });
+        for (DoubleKeyMap<K1, K2, V> part : maps) {
+            result.mergeRows(part, remappingFunction, parallel);
+        }
+        return result;
+    }
+
+    /**
+     * 按整个副键Map合并
+     *
+     * @param remappingFunction 为null时直接覆盖
+     */
+    private void mergeRows(DoubleKeyMap<K1, K2, V> that, BiFunction<? super V, ? super V, ? extends V> remappingFunction, boolean parallel) {
+        if (listeners != null) {
+            if (remappingFunction == null && hasSortedViews() && that.containsValue(null)) {
+                throw new IllegalArgumentException(NULL_VALUE_MESSAGE);
+            }
+            // 需要逐个通知监听器
+            that.forEach((TriConsumer<K1, K2, V>) (k1, k2, v) -> {
+                if (remappingFunction == null) {
+                    put(k1, k2, v);
+                } else {
+                    merge(k1, k2, v, remappingFunction);
+                }
+            });
+            return;
+        }
+        final Map.Entry<K1, Map<K2, V>>[] rows = that.rowArray();
+        @SuppressWarnings("unchecked")
+        final Map<K2, V>[] targets = (Map<K2, V>[]) new Map<?, ?>[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            final Map<K2, V> source = rows[i].getValue();
+            if (source.isEmpty()) {
+                continue;
+            }
+            final K1 k1 = rows[i].getKey();
+            Map<K2, V> target = map.get(k1);
+            if (target == null) {
+                final Map<K2, V> created = newSubMap(source.size());
+                target = map.putIfAbsent(k1, created);
+                if (target == null) {
+                    target = created;
+                }
+            }
+            targets[i] = target;
+        }
+        if (parallel && rows.length > 1) {
+            final long[] offsets = TripleSpliterator.offsets(rows);
+            final long threshold = Math.max(offsets[rows.length] / (ForkJoinPool.getCommonPoolParallelism() * 4L), 1024);
+            ForkJoinPool.commonPool().invoke(new MergeTask<>(rows, targets, offsets, 0, rows.length, threshold, remappingFunction));
+        } else {
+            for (int i = 0; i < rows.length; i++) {
+                if (targets[i] != null) {
+                    mergeRow(targets[i], rows[i].getValue(), remappingFunction);
+                }
+            }
+        }
+    }
+
+    private static <K2, V> void mergeRow(Map<K2, V> target, Map<K2, V> source,
+                                         BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null) {
+            if (target != source) {
+                target.putAll(source);
+            }
+            return;
+        }
+        final Map<K2, V> from = target == source ? new HashMap<>(source) : source;
+        from.forEach((k2, v) -> {
+            if (v != null) {
+                target.merge(k2, v, remappingFunction);
+            } else if (target.get(k2) == null) {
+                target.put(k2, null);
+            }
+        });
+    }
+
+    private static int capacity(int expectedSize) {
+        return (int) (expectedSize / 0.75f) + 1;
+    }
     
+    /**
+     * 如果主键和副键对应的值不存在，使用函数计算并放入
+     *
+     * @param k1              主键
+     * @param k2              副键
+     * @param mappingFunction 计算值的函数，返回null时不放入
+     * @return 已存在的值或计算出的值
+     */
+    public V computeIfAbsent(K1 k1, K2 k2, BiFunction<? super K1, ? super K2, ? extends V> mappingFunction) {
+        final Map<K2, V> subMap = map.get(k1);
+        final V old = subMap == null ? null : subMap.get(k2);
+        if (old != null) {
+            return old;
+        }
+        final V v = mappingFunction.apply(k1, k2);
+        if (v != null) {
+            put(k1, k2, v);
+        }
+        return v;
+    }
+
+    /**
+     * 如果主键和副键对应的值不存在则放入value，否则用函数合并旧值和value
+     *
+     * @param k1                主键
+     * @param k2                副键
+     * @param value             要合并的值
+     * @param remappingFunction 合并旧值和新值的函数，返回null时删除该值
+     * @return 合并后的值
+     */
+    public V merge(K1 k1, K2 k2, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        final Map<K2, V> subMap = map.get(k1);
+        final V old = subMap == null ? null : subMap.get(k2);
+        final V v = old == null ? value : remappingFunction.apply(old, value);
+        if (v == null) {
+            if (old != null) {
+                remove(k1, k2);
+            }
+        } else {
+            put(k1, k2, v);
+        }
+        return v;
+    }
+
     public int size() {
         return map.size();
     }
@@ -104,15 +379,37 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
     }
 
     public V get(K1 k1, K2 k2) {
-        return map.get(k1).get(k2);
+        final PairFilter<K1, K2, V> filter = pairFilter;
+        if (filter != null && !filter.mightContain(k1, k2)) {
+            return null;
+        }
+        final Map<K2, V> subMap = map.get(k1);
+        return subMap == null ? null : subMap.get(k2);
     }
 
     public Map<K2, V> remove(K1 k1) {
-        return map.remove(k1);
+        final Map<K2, V> subMap = map.remove(k1);
+        if (listeners != null && subMap != null) {
+            subMap.forEach((k2, v) -> fireRemove(k1, k2, v));
+        }
+        return subMap;
     }
 
     public V remove(K1 k1, K2 k2) {
-        return map.get(k1).remove(k2);
+        final PairFilter<K1, K2, V> filter = pairFilter;
+        if (filter != null && !filter.mightContain(k1, k2)) {
+            return null;
+        }
+        final Map<K2, V> subMap = map.get(k1);
+        if (subMap == null) {
+            return null;
+        }
+        final boolean existed = listeners != null && subMap.containsKey(k2);
+        final V v = subMap.remove(k2);
+        if (existed) {
+            fireRemove(k1, k2, v);
+        }
+        return v;
     }
 
     public Boolean containsKey(K1 k1) {
@@ -120,7 +417,12 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
     }
 
     public Boolean containsKey(K1 k1, K2 k2) {
-        return map.get(k1).containsKey(k2);
+        final PairFilter<K1, K2, V> filter = pairFilter;
+        if (filter != null && !filter.mightContain(k1, k2)) {
+            return false;
+        }
+        final Map<K2, V> subMap = map.get(k1);
+        return subMap != null && subMap.containsKey(k2);
     }
 
     public boolean isOrdered() {
@@ -133,9 +435,104 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
 
     @SuppressWarnings("unchecked")
     public Boolean containsSubKey(K2 k2) {
+        if (subKeyIndex != null) {
+            return subKeyIndex.contains(k2);
+        }
+        return scanSubKey(k2);
+    }
+
+    /**
+     * 不使用副键索引，扫描所有副键Map
+     */
+    boolean scanSubKey(K2 k2) {
         return map.values().stream().parallel().anyMatch(subMap -> subMap.containsKey(k2));
     }
 
+    /**
+     * <p>开启副键到主键集合的反向索引</p>
+     * <p>开启时遍历一次现有数据，之后随put、remove、clear增量维护，
+     * 使{@link #containsSubKey(Object)}、{@link #getPrimaryKeys(Object)}和{@link #transpose()}不再需要扫描所有副键Map。
+     * 直接修改{@link #get(Object)}返回的副键Map不会更新索引</p>
+     *
+     * @return 当前集合
+     */
+    public DoubleKeyMap<K1, K2, V> indexSubKeys() {
+        if (subKeyIndex == null) {
+            final SubKeyIndex<K1, K2, V> index = new SubKeyIndex<>(this);
+            addListener(index);
+            subKeyIndex = index;
+            subKeyIndexed = true;
+        }
+        return this;
+    }
+
+    public boolean isSubKeyIndexed() {
+        return subKeyIndex != null;
+    }
+
+    /**
+     * <p>开启(主键, 副键)的布隆过滤器</p>
+     * <p>开启后{@link #get(Object, Object)}、{@link #containsKey(Object, Object)}和{@link #remove(Object, Object)}
+     * 先检查过滤器，大部分不存在的键不需要查找主键Map和副键Map。过滤器随put增量维护，删除较多或容量不足时重建。
+     * 直接修改{@link #get(Object)}返回的副键Map不会更新过滤器，新放入的键可能查不到</p>
+     *
+     * @param falsePositiveRate 期望误判率，范围为(0, 1)，例如0.01
+     * @return 当前集合
+     */
+    public DoubleKeyMap<K1, K2, V> enableBloomFilter(double falsePositiveRate) {
+        final PairFilter<K1, K2, V> filter = new PairFilter<>(this, falsePositiveRate);
+        addListener(filter);
+        if (pairFilter != null) {
+            removeListener(pairFilter);
+        }
+        pairFilter = filter;
+        pairFilterRate = falsePositiveRate;
+        return this;
+    }
+
+    public boolean isBloomFilterEnabled() {
+        return pairFilter != null;
+    }
+
+    /**
+     * 获取包含指定副键的所有主键，开启索引时为O(1)，否则需要扫描所有副键Map
+     *
+     * @param k2 副键
+     * @return 主键集合(只读)
+     */
+    public Set<K1> getPrimaryKeys(K2 k2) {
+        if (subKeyIndex != null) {
+            return subKeyIndex.get(k2);
+        }
+        return scanPrimaryKeys(k2);
+    }
+
+    /**
+     * 不使用副键索引，扫描所有副键Map
+     */
+    Set<K1> scanPrimaryKeys(K2 k2) {
+        final Set<K1> k1s = ordered ? new LinkedHashSet<>() : new HashSet<>();
+        map.forEach((k1, subMap) -> {
+            if (subMap.containsKey(k2)) {
+                k1s.add(k1);
+            }
+        });
+        return Collections.unmodifiableSet(k1s);
+    }
+
+    /**
+     * <p>转置视图：副键 → 主键 → 值</p>
+     * <p>视图直接读取反向索引和当前集合，不复制数据，只读，随当前集合的修改而变化。需要先调用{@link #indexSubKeys()}</p>
+     *
+     * @return 转置后的只读视图
+     */
+    public Map<K2, Map<K1, V>> transpose() {
+        if (subKeyIndex == null) {
+            throw new IllegalStateException("转置视图需要先调用indexSubKeys()开启副键索引");
+        }
+        return new TransposedView<>(this, subKeyIndex);
+    }
+
     public List<V> getListOfAll() {
         final Collection<Map<K2, V>> values = map.values();
         List<V> list = new ArrayList<>();
@@ -143,7 +540,25 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
         return Collections.unmodifiableList(list);
     }
 
+    /**
+     * 获取所有值按比较器排序后的List。如果已经用同一个比较器注册了排序视图，直接返回视图维护的List
+     *
+     * @param comparator 比较器
+     * @return 排好序的只读List
+     * @see #registerSortedView(Comparator)
+     */
     public List<V> getSortedListOfAll(Comparator<V> comparator) {
+        final SortedView<K1, K2, V> view = sortedViews == null ? null : sortedViews.get(comparator);
+        if (view != null) {
+            return view.toList();
+        }
+        return sortValues(comparator);
+    }
+
+    /**
+     * 不使用排序视图，复制所有值后排序
+     */
+    List<V> sortValues(Comparator<V> comparator) {
         final Collection<Map<K2, V>> values = map.values();
         List<V> list = new ArrayList<>();
         values.forEach(value -> list.addAll(value.values()));
@@ -155,12 +570,147 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
         return Collections.unmodifiableList(new ArrayList<>(map.get(k1).values()));
     }
 
+    /**
+     * 获取主键下所有值按比较器排序后的List。如果已经用同一个比较器注册了按主键的排序视图，直接返回视图维护的List
+     *
+     * @param k1         主键
+     * @param comparator 比较器
+     * @return 排好序的只读List
+     * @see #registerSortedSubView(Comparator)
+     */
     public List<V> getSortedListOfSubKey(K1 k1, Comparator<V> comparator) {
+        final SortedView<K1, K2, V> view = sortedSubViews == null ? null : sortedSubViews.get(comparator);
+        if (view != null) {
+            return view.toList(k1);
+        }
+        return sortValues(k1, comparator);
+    }
+
+    /**
+     * 不使用排序视图，复制主键下的值后排序
+     */
+    List<V> sortValues(K1 k1, Comparator<V> comparator) {
         final List<V> list = new ArrayList<>(map.get(k1).values());
         sort(list, comparator);
         return Collections.unmodifiableList(list);
     }
 
+    /**
+     * <p>注册所有值按比较器排序的视图</p>
+     * <p>注册时排序一次，之后随put、remove、clear以O(log n)增量维护；
+     * {@link #getSortedListOfAll(Comparator)}和{@link #topK(int, Comparator)}传入同一个比较器对象时直接使用该视图，
+     * 集合未修改时重复调用返回同一个List。值本身被修改导致排序变化时需要重新注册</p>
+     * <p>注册了排序视图后不能放入null值，放入时在修改集合之前抛出IllegalArgumentException；已有null值时不能注册</p>
+     *
+     * @param comparator 比较器
+     * @return 当前集合
+     */
+    public DoubleKeyMap<K1, K2, V> registerSortedView(Comparator<V> comparator) {
+        if (sortedViews == null || !sortedViews.containsKey(comparator)) {
+            final SortedView<K1, K2, V> view = new SortedView<>(this, comparator, false);
+            addListener(view);
+            if (sortedViews == null) {
+                sortedViews = new HashMap<>(2);
+            }
+            sortedViews.put(comparator, view);
+        }
+        return this;
+    }
+
+    /**
+     * 注册每个主键下的值按比较器排序的视图，用于{@link #getSortedListOfSubKey(Object, Comparator)}和{@link #topK(Object, int, Comparator)}
+     *
+     * @param comparator 比较器
+     * @return 当前集合
+     * @see #registerSortedView(Comparator)
+     */
+    public DoubleKeyMap<K1, K2, V> registerSortedSubView(Comparator<V> comparator) {
+        if (sortedSubViews == null || !sortedSubViews.containsKey(comparator)) {
+            final SortedView<K1, K2, V> view = new SortedView<>(this, comparator, true);
+            addListener(view);
+            if (sortedSubViews == null) {
+                sortedSubViews = new HashMap<>(2);
+            }
+            sortedSubViews.put(comparator, view);
+        }
+        return this;
+    }
+
+    /**
+     * 取消比较器对应的所有排序视图
+     *
+     * @param comparator 注册时使用的比较器
+     */
+    public void unregisterSortedView(Comparator<V> comparator) {
+        if (sortedViews != null) {
+            removeListener(sortedViews.remove(comparator));
+        }
+        if (sortedSubViews != null) {
+            removeListener(sortedSubViews.remove(comparator));
+        }
+    }
+
+    /**
+     * 获取按比较器排在最前面的k个值。已注册排序视图时为O(k)，否则用大小为k的堆遍历一次，为O(n log k)
+     *
+     * @param k          个数，不能小于0
+     * @param comparator 比较器
+     * @return 排好序的只读List
+     * @throws IllegalArgumentException k小于0，或没有排序视图时值中有null
+     */
+    public List<V> topK(int k, Comparator<V> comparator) {
+        checkK(k);
+        final SortedView<K1, K2, V> view = sortedViews == null ? null : sortedViews.get(comparator);
+        if (view != null) {
+            return view.head(k);
+        }
+        return scanTopK(k, comparator);
+    }
+
+    /**
+     * 不使用排序视图，用堆遍历所有值
+     */
+    List<V> scanTopK(int k, Comparator<V> comparator) {
+        long entries = 0;
+        for (Map<K2, V> subMap : map.values()) {
+            entries += subMap.size();
+        }
+        final TopK<V> topK = new TopK<>(k, (int) Math.min(k, entries), comparator);
+        map.values().forEach(subMap -> subMap.values().forEach(topK::offer));
+        return topK.toList();
+    }
+
+    /**
+     * 获取主键下按比较器排在最前面的k个值
+     *
+     * @param k1         主键
+     * @param k          个数，不能小于0
+     * @param comparator 比较器
+     * @return 排好序的只读List
+     * @throws IllegalArgumentException k小于0，或没有排序视图时值中有null
+     * @see #topK(int, Comparator)
+     */
+    public List<V> topK(K1 k1, int k, Comparator<V> comparator) {
+        checkK(k);
+        final SortedView<K1, K2, V> view = sortedSubViews == null ? null : sortedSubViews.get(comparator);
+        if (view != null) {
+            return view.head(k1, k);
+        }
+        return scanTopK(k1, k, comparator);
+    }
+
+    /**
+     * 不使用排序视图，用堆遍历主键下的值
+     */
+    List<V> scanTopK(K1 k1, int k, Comparator<V> comparator) {
+        final Map<K2, V> subMap = map.get(k1);
+        final TopK<V> topK = new TopK<>(k, subMap == null ? 0 : Math.min(k, subMap.size()), comparator);
+        if (subMap != null) {
+            subMap.values().forEach(topK::offer);
+        }
+        return topK.toList();
+    }
+
     public void forEach(TriConsumer<K1, K2, V> consumer) {
         map.forEach((k1, subMap) -> {
             subMap.forEach((k2, v) -> {
@@ -178,11 +728,153 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
     public Stream<Map.Entry<K1, Map<K2, V>>> stream(){
         return map.entrySet().stream();
     }
+
+    /**
+     * 按(主键, 副键, 值)三元组遍历的串行流，大小是精确的
+     *
+     * @return 三元组流
+     */
+    public Stream<Triple<K1, K2, V>> tripleStream() {
+        return StreamSupport.stream(tripleSpliterator(), false);
+    }
+
+    /**
+     * 按(主键, 副键, 值)三元组遍历的并行流，按三元组个数在主键之间均匀切分
+     *
+     * @return 三元组并行流
+     */
+    public Stream<Triple<K1, K2, V>> parallelTripleStream() {
+        return StreamSupport.stream(tripleSpliterator(), true);
+    }
+
+    /**
+     * 在ForkJoinPool.commonPool()中并行遍历所有键值对，按键值对个数在主键之间均匀切分，不创建三元组对象。
+     * consumer会被多个线程同时调用，调用顺序不确定
+     *
+     * @param consumer 处理键值对的方法
+     */
+    public void parallelForEach(TriConsumer<K1, K2, V> consumer) {
+        final Map.Entry<K1, Map<K2, V>>[] rows = rowArray();
+        final long[] offsets = TripleSpliterator.offsets(rows);
+        final long threshold = Math.max(offsets[rows.length] / (ForkJoinPool.getCommonPoolParallelism() * 4L), 1024);
+        ForkJoinPool.commonPool().invoke(new ForEachTask<>(rows, offsets, 0, rows.length, threshold, consumer));
+    }
+
+    Spliterator<Triple<K1, K2, V>> tripleSpliterator() {
+        return new TripleSpliterator<>(rowArray(), ordered, true);
+    }
+
+    /**
+     * <p>把当前内容压缩成只读的{@link FrozenDoubleKeyMap}，适合启动时构建之后只读的集合</p>
+     * <p>返回的集合与当前集合互不影响</p>
+     *
+     * @return 只读集合
+     */
+    public FrozenDoubleKeyMap<K1, K2, V> freeze() {
+        return FrozenDoubleKeyMap.of(this);
+    }
+
+    /**
+     * @return 当前所有主键及其副键Map的数组
+     */
+    @SuppressWarnings("unchecked")
+    Map.Entry<K1, Map<K2, V>>[] rowArray() {
+        return (Map.Entry<K1, Map<K2, V>>[]) map.entrySet().toArray(new Map.Entry<?, ?>[0]);
+    }
     
     public void clear(){
         map.clear();
+        if (listeners != null) {
+            listeners.forEach(MutationListener::clear);
+        }
+    }
+
+    /**
+     * 注册修改监听器
+     *
+     * @param listener 监听器
+     */
+    void addListener(MutationListener<K1, K2, V> listener) {
+        if (listeners == null) {
+            listeners = new ArrayList<>(2);
+        }
+        listeners.add(listener);
+    }
+
+    boolean hasSortedViews() {
+        return (sortedViews != null && !sortedViews.isEmpty()) || (sortedSubViews != null && !sortedSubViews.isEmpty());
+    }
+
+    /**
+     * 排序视图不能保存null值，在修改集合之前检查
+     */
+    private void checkValue(V v) {
+        if (v == null && hasSortedViews()) {
+            throw new IllegalArgumentException(NULL_VALUE_MESSAGE);
+        }
+    }
+
+    static void checkK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k不能小于0: " + k);
+        }
+    }
+
+    /**
+     * @return 是否有需要增量维护的附加结构
+     */
+    boolean hasListeners() {
+        return listeners != null;
+    }
+
+    void removeListener(MutationListener<K1, K2, V> listener) {
+        if (listeners != null && listener != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                listeners = null;
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // 排序视图的比较器不一定可以序列化，反序列化后只重建副键索引和布隆过滤器
+        if (subKeyIndexed) {
+            subKeyIndexed = false;
+            indexSubKeys();
+        }
+        if (pairFilterRate > 0) {
+            enableBloomFilter(pairFilterRate);
+        }
+    }
+
+    private void firePut(K1 k1, K2 k2, boolean existed, V old, V v) {
+        if (listeners != null) {
+            for (MutationListener<K1, K2, V> listener : listeners) {
+                listener.put(k1, k2, existed, old, v);
+            }
+        }
+    }
+
+    private void fireRemove(K1 k1, K2 k2, V v) {
+        if (listeners != null) {
+            for (MutationListener<K1, K2, V> listener : listeners) {
+                listener.remove(k1, k2, v);
+            }
+        }
     }
     
+    /**
+     * <p>创建遍历所有键值对的游标，每前进一步不创建对象(每个主键创建一次副键Map的迭代器)，可以提前结束</p>
+     * <p>通过游标删除或修改值会同步更新副键索引和排序视图。删除主键下最后一个副键后保留空的副键Map，
+     * 与{@link #remove(Object, Object)}一致</p>
+     *
+     * @return 游标
+     */
+    public DoubleKeyCursor<K1, K2, V> cursor() {
+        return new Cursor();
+    }
+
     @Override
     public Iterator<Map.Entry<K1, Map<K2, V>>> iterator() {
         return map.entrySet().iterator();
@@ -193,9 +885,12 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
         map.entrySet().forEach(entry -> action.accept(entry));
     }
     
+    /**
+     * 基于当前主键快照的Spliterator，可以按主键切分，大小是精确的(SIZED | SUBSIZED)
+     */
     @Override
     public Spliterator<Map.Entry<K1, Map<K2, V>>> spliterator() {
-        return Spliterators.spliteratorUnknownSize(iterator(), 0);
+        return Spliterators.spliterator(rowArray(), Spliterator.DISTINCT | Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0));
     }
     
     @Override
@@ -249,4 +944,202 @@ public class DoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry
         }
         return true;
     }
-}
\ No newline at end of file
+
+    /**
+     * 依次使用主键Map和副键Map的迭代器，HashMap的迭代器直接返回内部节点
+     */
+    private final class Cursor implements DoubleKeyCursor<K1, K2, V> {
+        private Iterator<Map.Entry<K1, Map<K2, V>>> rows;
+        private Iterator<Map.Entry<K2, V>> entries;
+        private K1 k1;
+        private Map.Entry<K2, V> current;
+
+        private Cursor() {
+            reset();
+        }
+
+        @Override
+        public boolean advance() {
+            while (entries == null || !entries.hasNext()) {
+                if (!rows.hasNext()) {
+                    entries = null;
+                    current = null;
+                    return false;
+                }
+                final Map.Entry<K1, Map<K2, V>> row = rows.next();
+                k1 = row.getKey();
+                entries = row.getValue().entrySet().iterator();
+            }
+            current = entries.next();
+            return true;
+        }
+
+        @Override
+        public K1 k1() {
+            checkCurrent();
+            return k1;
+        }
+
+        @Override
+        public K2 k2() {
+            return checkCurrent().getKey();
+        }
+
+        @Override
+        public V value() {
+            return checkCurrent().getValue();
+        }
+
+        @Override
+        public void remove() {
+            final Map.Entry<K2, V> entry = checkCurrent();
+            final K2 k2 = entry.getKey();
+            final V v = entry.getValue();
+            entries.remove();
+            current = null;
+            fireRemove(k1, k2, v);
+        }
+
+        @Override
+        public V setValue(V v) {
+            final Map.Entry<K2, V> entry = checkCurrent();
+            checkValue(v);
+            final V old = entry.setValue(v);
+            firePut(k1, entry.getKey(), true, old, v);
+            return old;
+        }
+
+        @Override
+        public void reset() {
+            rows = map.entrySet().iterator();
+            entries = null;
+            k1 = null;
+            current = null;
+        }
+
+        private Map.Entry<K2, V> checkCurrent() {
+            if (current == null) {
+                throw new IllegalStateException("游标没有指向键值对");
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 并行遍历的任务，按键值对个数切分主键区间
+     */
+    private static final class ForEachTask<K1, K2, V> extends RecursiveAction {
+        private static final long serialVersionUID = 2480436113398312950L;
+
+        private final Map.Entry<K1, Map<K2, V>>[] rows;
+        private final long[] offsets;
+        private final int from;
+        private final int to;
+        private final long threshold;
+        private final TriConsumer<K1, K2, V> consumer;
+
+        private ForEachTask(Map.Entry<K1, Map<K2, V>>[] rows, long[] offsets, int from, int to, long threshold,
+                            TriConsumer<K1, K2, V> consumer) {
+            this.rows = rows;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 || offsets[to] - offsets[from] <= threshold) {
+                for (int i = from; i < to; i++) {
+                    final K1 k1 = rows[i].getKey();
+                    rows[i].getValue().forEach((k2, v) -> consumer.accept(k1, k2, v));
+                }
+                return;
+            }
+            final int mid = TripleSpliterator.split(offsets, from, to);
+            invokeAll(new ForEachTask<>(rows, offsets, from, mid, threshold, consumer),
+                    new ForEachTask<>(rows, offsets, mid, to, threshold, consumer));
+        }
+    }
+
+    /**
+     * 并行合并的任务，按来源的键值对个数切分主键区间
+     */
+    private static final class MergeTask<K1, K2, V> extends RecursiveAction {
+        private static final long serialVersionUID = -3318624470213871175L;
+
+        private final Map.Entry<K1, Map<K2, V>>[] rows;
+        private final Map<K2, V>[] targets;
+        private final long[] offsets;
+        private final int from;
+        private final int to;
+        private final long threshold;
+        private final BiFunction<? super V, ? super V, ? extends V> remappingFunction;
+
+        private MergeTask(Map.Entry<K1, Map<K2, V>>[] rows, Map<K2, V>[] targets, long[] offsets, int from, int to,
+                          long threshold, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+            this.rows = rows;
+            this.targets = targets;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.remappingFunction = remappingFunction;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 || offsets[to] - offsets[from] <= threshold) {
+                for (int i = from; i < to; i++) {
+                    if (targets[i] != null) {
+                        mergeRow(targets[i], rows[i].getValue(), remappingFunction);
+                    }
+                }
+                return;
+            }
+            final int mid = TripleSpliterator.split(offsets, from, to);
+            invokeAll(new MergeTask<>(rows, targets, offsets, from, mid, threshold, remappingFunction),
+                    new MergeTask<>(rows, targets, offsets, mid, to, threshold, remappingFunction));
+        }
+    }
+
+    /**
+     * 用大小为k的堆保留排在最前面的k个元素，堆按实际元素个数分配，不按k预先分配
+     */
+    private static final class TopK<V> {
+        private final int k;
+        private final Comparator<V> comparator;
+        /**
+         * 堆顶是当前保留的元素中排在最后的一个
+         */
+        private final PriorityQueue<V> heap;
+
+        /**
+         * @param expectedSize 预计保留的元素个数，即k和元素个数中较小的一个
+         */
+        private TopK(int k, int expectedSize, Comparator<V> comparator) {
+            this.k = k;
+            this.comparator = comparator;
+            this.heap = new PriorityQueue<>(Math.max(1, expectedSize), comparator.reversed());
+        }
+
+        private void offer(V v) {
+            if (v == null) {
+                throw new IllegalArgumentException("topK的值不能为null");
+            }
+            if (heap.size() < k) {
+                heap.offer(v);
+            } else if (k > 0 && comparator.compare(v, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(v);
+            }
+        }
+
+        private List<V> toList() {
+            final List<V> list = new ArrayList<>(heap);
+            sort(list, comparator);
+            return Collections.unmodifiableList(list);
+        }
+    }
+}
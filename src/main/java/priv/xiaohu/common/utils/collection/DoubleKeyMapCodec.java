@@ -0,0 +1,107 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>{@link MappedDoubleKeyMap}文件格式中键和值的编解码器</p>
+ * <p>用作键时{@link #hash(Object)}必须在不同进程之间保持一致(String和包装类型的hashCode满足这个条件，枚举和默认的Object.hashCode不满足)</p>
+ *
+ * @param <T> 编码的类型
+ * @author zxh
+ */
+public interface DoubleKeyMapCodec<T> {
+
+    /**
+     * 编码
+     *
+     * @param value 要编码的对象，不为null
+     * @param out   输出
+     * @throws IOException 写入失败
+     */
+    void write(T value, DataOutput out) throws IOException;
+
+    /**
+     * 从buffer的当前位置解码，并把位置移动到编码之后
+     *
+     * @param buffer 输入
+     * @return 解码后的对象
+     */
+    T read(ByteBuffer buffer);
+
+    /**
+     * 用于文件中索引的哈希值，默认为hashCode()
+     *
+     * @param value 对象
+     * @return 哈希值
+     */
+    default int hash(T value) {
+        final int h = value.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 长度(int) + UTF-8字节
+     */
+    DoubleKeyMapCodec<String> STRING = new DoubleKeyMapCodec<String>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(ByteBuffer buffer) {
+            final int length = buffer.getInt();
+            final String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                final byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+    };
+
+    DoubleKeyMapCodec<Integer> INTEGER = new DoubleKeyMapCodec<Integer>() {
+        @Override
+        public void write(Integer value, DataOutput out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    DoubleKeyMapCodec<Long> LONG = new DoubleKeyMapCodec<Long>() {
+        @Override
+        public void write(Long value, DataOutput out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    DoubleKeyMapCodec<Double> DOUBLE = new DoubleKeyMapCodec<Double>() {
+        @Override
+        public void write(Double value, DataOutput out) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double read(ByteBuffer buffer) {
+            return buffer.getDouble();
+        }
+    };
+}
@@ -0,0 +1,699 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.util.Collections.sort;
+
+/**
+ * <p>扁平存储的双键Map集合</p>
+ * <p>所有(主键, 副键, 值)三元组都存放在同一个开放寻址(线性探测)的数组中，按主键和副键的组合哈希定位，
+ * 不为每个主键创建副键Map，也不为每个键值对创建节点对象，查找时不创建组合键对象。
+ * 适合主键很多、每个主键下只有少量副键的稀疏数据</p>
+ * <p>公开方法与{@link DoubleKeyMap}相同。按(主键, 副键)的操作是O(1)的；
+ * 按主键取副键Map({@link #get(Object)}、{@link #remove(Object)}、{@link #toMap()}等)需要扫描整个数组，
+ * 返回的是副本，修改副本不会影响本集合</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+public class FlatDoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry<K1, Map<K2, V>>>, Cloneable {
+    private static final long serialVersionUID = -2742361853790264917L;
+
+    /**
+     * 代替null键，table中的null表示空槽
+     */
+    private static final Object NULL_KEY = new Object();
+    private final static int DEFUALT_SIZE = 1 << 4;
+    private final static float LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每个槽依次存放主键、副键、值
+     */
+    private transient Object[] table;
+    private transient int entries;
+    /**
+     * 主键及其副键个数，用于size()和containsKey(K1)
+     */
+    private transient Object[] rowKeys;
+    private transient int[] rowCounts;
+    private transient int rows;
+
+    public FlatDoubleKeyMap() {
+        this(DEFUALT_SIZE);
+    }
+
+    /**
+     * @param size 预计的键值对个数
+     */
+    public FlatDoubleKeyMap(int size) {
+        init(size);
+    }
+
+    public FlatDoubleKeyMap(DoubleKeyMap<K1, K2, V> that) {
+        this(DEFUALT_SIZE);
+        put(that);
+    }
+
+    private void init(int size) {
+        final int capacity = tableSizeFor((int) (Math.max(size, 1) / LOAD_FACTOR) + 1);
+        table = new Object[capacity * 3];
+        rowKeys = new Object[capacity];
+        rowCounts = new int[capacity];
+        entries = 0;
+        rows = 0;
+    }
+
+    public Boolean put(K1 k1, K2 k2, V v) {
+        return insert(mask(k1), mask(k2), v, false) == v;
+    }
+
+    public Boolean putIfAbsent(K1 k1, K2 k2, V v) {
+        final int slot = find(mask(k1), mask(k2));
+        if (slot >= 0 && table[slot * 3 + 2] != null) {
+            return false;
+        }
+        return put(k1, k2, v);
+    }
+
+    public Boolean put(K1 k1, Map<K2, V> subMap) {
+        subMap.forEach((k2, v) -> put(k1, k2, v));
+        return true;
+    }
+
+    public Boolean put(DoubleKeyMap<K1, K2, V> that) {
+        that.forEach((TriConsumer<K1, K2, V>) this::put);
+        return true;
+    }
+
+    public Boolean putIfAbsent(DoubleKeyMap<K1, K2, V> that) {
+        that.forEach((TriConsumer<K1, K2, V>) this::putIfAbsent);
+        return true;
+    }
+
+    public V computeIfAbsent(K1 k1, K2 k2, BiFunction<? super K1, ? super K2, ? extends V> mappingFunction) {
+        final V old = get(k1, k2);
+        if (old != null) {
+            return old;
+        }
+        final V v = mappingFunction.apply(k1, k2);
+        if (v != null) {
+            put(k1, k2, v);
+        }
+        return v;
+    }
+
+    public V merge(K1 k1, K2 k2, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        final V old = get(k1, k2);
+        final V v = old == null ? value : remappingFunction.apply(old, value);
+        if (v == null) {
+            remove(k1, k2);
+        } else {
+            put(k1, k2, v);
+        }
+        return v;
+    }
+
+    /**
+     * @return 主键个数
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * @return 键值对个数
+     */
+    public int entryCount() {
+        return entries;
+    }
+
+    public Map<K1, Set<K2>> keys() {
+        final Map<K1, Set<K2>> keys = new HashMap<>(capacity(rows));
+        forEach((k1, k2, v) -> keys.computeIfAbsent(k1, k -> new HashSet<>()).add(k2));
+        return keys;
+    }
+
+    public Set<Map.Entry<K1, Map<K2, V>>> entrySet() {
+        return toMap().entrySet();
+    }
+
+    /**
+     * @return 按主键分组的嵌套Map副本
+     */
+    public Map<K1, Map<K2, V>> toMap() {
+        final Map<K1, Map<K2, V>> map = new HashMap<>(capacity(rows));
+        forEach((k1, k2, v) -> map.computeIfAbsent(k1, k -> new HashMap<>()).put(k2, v));
+        return map;
+    }
+
+    /**
+     * @return 包含相同键值对的DoubleKeyMap
+     */
+    public DoubleKeyMap<K1, K2, V> toDoubleKeyMap() {
+        final DoubleKeyMap<K1, K2, V> map = new DoubleKeyMap<>(capacity(rows));
+        forEach((TriConsumer<K1, K2, V>) map::put);
+        return map;
+    }
+
+    /**
+     * @return 主键对应的副键Map副本，主键不存在时返回null
+     */
+    public Map<K2, V> get(K1 k1) {
+        final Object key = mask(k1);
+        if (rowSlot(key) < 0) {
+            return null;
+        }
+        final Map<K2, V> subMap = new HashMap<>();
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null && eq(tab[i], key)) {
+                subMap.put((K2) unmask(tab[i + 1]), (V) tab[i + 2]);
+            }
+        }
+        return subMap;
+    }
+
+    public V get(K1 k1, K2 k2) {
+        final int slot = find(mask(k1), mask(k2));
+        return slot < 0 ? null : (V) table[slot * 3 + 2];
+    }
+
+    public Map<K2, V> remove(K1 k1) {
+        final Object key = mask(k1);
+        if (rowSlot(key) < 0) {
+            return null;
+        }
+        final Map<K2, V> subMap = new HashMap<>();
+        final int capacity = table.length / 3;
+        for (int slot = 0; slot < capacity; ) {
+            final Object k = table[slot * 3];
+            if (k != null && eq(k, key)) {
+                subMap.put((K2) unmask(table[slot * 3 + 1]), (V) table[slot * 3 + 2]);
+                // 删除后后面的元素可能移动到当前槽，需要重新检查
+                delete(slot);
+            } else {
+                slot++;
+            }
+        }
+        return subMap;
+    }
+
+    public V remove(K1 k1, K2 k2) {
+        final int slot = find(mask(k1), mask(k2));
+        if (slot < 0) {
+            return null;
+        }
+        final V old = (V) table[slot * 3 + 2];
+        delete(slot);
+        return old;
+    }
+
+    public Boolean containsKey(K1 k1) {
+        return rowSlot(mask(k1)) >= 0;
+    }
+
+    public Boolean containsKey(K1 k1, K2 k2) {
+        return find(mask(k1), mask(k2)) >= 0;
+    }
+
+    public boolean isOrdered() {
+        return false;
+    }
+
+    public Boolean containsValue(V v) {
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null && Objects.equals(tab[i + 2], v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Boolean containsSubKey(K2 k2) {
+        final Object key = mask(k2);
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null && eq(tab[i + 1], key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<V> getListOfAll() {
+        final List<V> list = new ArrayList<>(entries);
+        forEach((k1, k2, v) -> list.add(v));
+        return Collections.unmodifiableList(list);
+    }
+
+    public List<V> getSortedListOfAll(Comparator<V> comparator) {
+        final List<V> list = new ArrayList<>(entries);
+        forEach((k1, k2, v) -> list.add(v));
+        sort(list, comparator);
+        return Collections.unmodifiableList(list);
+    }
+
+    public List<V> getListOfSubKey(K1 k1) {
+        return Collections.unmodifiableList(new ArrayList<>(get(k1).values()));
+    }
+
+    public List<V> getSortedListOfSubKey(K1 k1, Comparator<V> comparator) {
+        final List<V> list = new ArrayList<>(get(k1).values());
+        sort(list, comparator);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 直接遍历数组中的每个键值对，不创建任何对象
+     */
+    public void forEach(TriConsumer<K1, K2, V> consumer) {
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null) {
+                consumer.accept((K1) unmask(tab[i]), (K2) unmask(tab[i + 1]), (V) tab[i + 2]);
+            }
+        }
+    }
+
+    public void forEach(BiConsumer<K1, Map<K2, V>> consumer) {
+        toMap().forEach(consumer);
+    }
+
+    public Stream<Map.Entry<K1, Map<K2, V>>> stream() {
+        return toMap().entrySet().stream();
+    }
+
+    public void clear() {
+        Arrays.fill(table, null);
+        Arrays.fill(rowKeys, null);
+        Arrays.fill(rowCounts, 0);
+        entries = 0;
+        rows = 0;
+    }
+
+    /**
+     * 创建直接在数组上移动的游标，不创建任何对象，可以提前结束，也可以在遍历中删除
+     *
+     * @return 游标
+     */
+    public DoubleKeyCursor<K1, K2, V> cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public Iterator<Map.Entry<K1, Map<K2, V>>> iterator() {
+        return toMap().entrySet().iterator();
+    }
+
+    @Override
+    public void forEach(final Consumer<? super Map.Entry<K1, Map<K2, V>>> action) {
+        toMap().entrySet().forEach(action);
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K1, Map<K2, V>>> spliterator() {
+        return toMap().entrySet().spliterator();
+    }
+
+    @Override
+    public FlatDoubleKeyMap<K1, K2, V> clone() {
+        try {
+            final FlatDoubleKeyMap<K1, K2, V> clone = (FlatDoubleKeyMap<K1, K2, V>) super.clone();
+            clone.table = table.clone();
+            clone.rowKeys = rowKeys.clone();
+            clone.rowCounts = rowCounts.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object thatObj) {
+        if (thatObj == this) {
+            return true;
+        }
+        if (!(thatObj instanceof FlatDoubleKeyMap)) {
+            return false;
+        }
+        final FlatDoubleKeyMap<?, ?, ?> that = (FlatDoubleKeyMap<?, ?, ?>) thatObj;
+        if (entries != that.entries || rows != that.rows) {
+            return false;
+        }
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null) {
+                final int slot = that.find(tab[i], tab[i + 1]);
+                if (slot < 0 || !Objects.equals(tab[i + 2], that.table[slot * 3 + 2])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null) {
+                h += hash(tab[i]) ^ hash(tab[i + 1]) ^ Objects.hashCode(tab[i + 2]);
+            }
+        }
+        return h;
+    }
+
+    /**
+     * 查找键值对所在的槽
+     *
+     * @return 找到时返回槽的序号，否则返回~(可插入的空槽序号)
+     */
+    private int find(Object k1, Object k2) {
+        final Object[] tab = table;
+        final int mask = tab.length / 3 - 1;
+        int slot = slotHash(k1, k2) & mask;
+        while (true) {
+            final Object k = tab[slot * 3];
+            if (k == null) {
+                return ~slot;
+            }
+            if (eq(k, k1) && eq(tab[slot * 3 + 1], k2)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private Object insert(Object k1, Object k2, Object v, boolean onlyIfAbsent) {
+        int slot = find(k1, k2);
+        if (slot >= 0) {
+            final Object old = table[slot * 3 + 2];
+            if (!onlyIfAbsent || old == null) {
+                table[slot * 3 + 2] = v;
+            }
+            return old;
+        }
+        if (entries + 1 > (table.length / 3) * LOAD_FACTOR) {
+            resize();
+            slot = find(k1, k2);
+        }
+        final int index = ~slot * 3;
+        table[index] = k1;
+        table[index + 1] = k2;
+        table[index + 2] = v;
+        entries++;
+        incrementRow(k1);
+        return null;
+    }
+
+    /**
+     * 删除槽中的键值对，并把后面同一探测链上的元素前移，不留删除标记
+     */
+    private void delete(int slot) {
+        final Object[] tab = table;
+        final int mask = tab.length / 3 - 1;
+        decrementRow(tab[slot * 3]);
+        entries--;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            final Object k = tab[next * 3];
+            if (k == null) {
+                break;
+            }
+            final int ideal = slotHash(k, tab[next * 3 + 1]) & mask;
+            // 空槽在元素的理想位置和当前位置之间时，把元素移动到空槽
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                System.arraycopy(tab, next * 3, tab, hole * 3, 3);
+                hole = next;
+            }
+        }
+        tab[hole * 3] = null;
+        tab[hole * 3 + 1] = null;
+        tab[hole * 3 + 2] = null;
+    }
+
+    private void resize() {
+        final Object[] old = table;
+        final int capacity = old.length / 3 * 2;
+        table = new Object[capacity * 3];
+        final int mask = capacity - 1;
+        for (int i = 0; i < old.length; i += 3) {
+            if (old[i] != null) {
+                int slot = slotHash(old[i], old[i + 1]) & mask;
+                while (table[slot * 3] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(old, i, table, slot * 3, 3);
+            }
+        }
+        resizeRows(capacity);
+    }
+
+    private int rowSlot(Object k1) {
+        final Object[] keys = rowKeys;
+        final int mask = keys.length - 1;
+        int slot = mix(hash(k1)) & mask;
+        while (true) {
+            final Object k = keys[slot];
+            if (k == null) {
+                return ~slot;
+            }
+            if (eq(k, k1)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void incrementRow(Object k1) {
+        int slot = rowSlot(k1);
+        if (slot >= 0) {
+            rowCounts[slot]++;
+            return;
+        }
+        if (rows + 1 > rowKeys.length * LOAD_FACTOR) {
+            resizeRows(rowKeys.length * 2);
+            slot = rowSlot(k1);
+        }
+        rowKeys[~slot] = k1;
+        rowCounts[~slot] = 1;
+        rows++;
+    }
+
+    private void decrementRow(Object k1) {
+        final int slot = rowSlot(k1);
+        if (--rowCounts[slot] > 0) {
+            return;
+        }
+        rows--;
+        final Object[] keys = rowKeys;
+        final int mask = keys.length - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            final Object k = keys[next];
+            if (k == null) {
+                break;
+            }
+            final int ideal = mix(hash(k)) & mask;
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = k;
+                rowCounts[hole] = rowCounts[next];
+                hole = next;
+            }
+        }
+        keys[hole] = null;
+        rowCounts[hole] = 0;
+    }
+
+    private void resizeRows(int capacity) {
+        if (capacity <= rowKeys.length) {
+            return;
+        }
+        final Object[] oldKeys = rowKeys;
+        final int[] oldCounts = rowCounts;
+        rowKeys = new Object[capacity];
+        rowCounts = new int[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = mix(hash(oldKeys[i])) & mask;
+                while (rowKeys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                rowKeys[slot] = oldKeys[i];
+                rowCounts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * <p>从一个空槽开始向前(下标递减)遍历，删除时后面的元素只会前移到已经访问过的位置，
+     * 而探测链不会越过起始的空槽，所以不会重复或遗漏</p>
+     */
+    private final class Cursor implements DoubleKeyCursor<K1, K2, V> {
+        private Object[] tab;
+        private int remaining;
+        private int slot;
+        private boolean valid;
+
+        private Cursor() {
+            reset();
+        }
+
+        @Override
+        public boolean advance() {
+            checkTable();
+            final int mask = tab.length / 3 - 1;
+            while (remaining > 0) {
+                remaining--;
+                slot = (slot - 1) & mask;
+                if (tab[slot * 3] != null) {
+                    valid = true;
+                    return true;
+                }
+            }
+            valid = false;
+            return false;
+        }
+
+        @Override
+        public K1 k1() {
+            checkCurrent();
+            return (K1) unmask(tab[slot * 3]);
+        }
+
+        @Override
+        public K2 k2() {
+            checkCurrent();
+            return (K2) unmask(tab[slot * 3 + 1]);
+        }
+
+        @Override
+        public V value() {
+            checkCurrent();
+            return (V) tab[slot * 3 + 2];
+        }
+
+        @Override
+        public void remove() {
+            checkCurrent();
+            delete(slot);
+            valid = false;
+        }
+
+        @Override
+        public V setValue(V v) {
+            checkCurrent();
+            final V old = (V) tab[slot * 3 + 2];
+            tab[slot * 3 + 2] = v;
+            return old;
+        }
+
+        @Override
+        public void reset() {
+            tab = table;
+            final int capacity = tab.length / 3;
+            int start = 0;
+            // 负载因子小于1，一定存在空槽
+            while (tab[start * 3] != null) {
+                start++;
+            }
+            slot = start;
+            remaining = capacity - 1;
+            valid = false;
+        }
+
+        private void checkCurrent() {
+            checkTable();
+            if (!valid) {
+                throw new IllegalStateException("游标没有指向键值对");
+            }
+        }
+
+        private void checkTable() {
+            if (tab != table) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(entries);
+        final Object[] tab = table;
+        for (int i = 0; i < tab.length; i += 3) {
+            if (tab[i] != null) {
+                out.writeObject(unmask(tab[i]));
+                out.writeObject(unmask(tab[i + 1]));
+                out.writeObject(tab[i + 2]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int size = in.readInt();
+        init(size);
+        for (int i = 0; i < size; i++) {
+            insert(mask(in.readObject()), mask(in.readObject()), in.readObject(), false);
+        }
+    }
+
+    private static Object mask(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private static Object unmask(Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == b || a.equals(b);
+    }
+
+    private static int hash(Object key) {
+        return key == NULL_KEY ? 0 : key.hashCode();
+    }
+
+    private static int slotHash(Object k1, Object k2) {
+        return mix(31 * hash(k1) + hash(k2));
+    }
+
+    /**
+     * MurmurHash3的32位混合函数，让线性探测下的分布更均匀
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int tableSizeFor(int size) {
+        int n = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        return Math.max(n, 2);
+    }
+
+    private static int capacity(int expected) {
+        return (int) (expected / 0.75f) + 1;
+    }
+}
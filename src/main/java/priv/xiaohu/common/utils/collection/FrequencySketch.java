@@ -0,0 +1,94 @@
+package priv.xiaohu.common.utils.collection;
+
+/**
+ * <p>估计访问频率的Count-Min Sketch，供W-TinyLFU淘汰策略使用</p>
+ * <p>每个long存放16个4位计数器，每个元素对应4个计数器，取最小值作为估计频率(最大15)。
+ * 累计增加次数达到容量的10倍时所有计数器减半，使旧的访问记录逐渐失效</p>
+ *
+ * @author zxh
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] table = new long[0];
+    private int sampleSize;
+    private int additions;
+
+    /**
+     * 按预计的元素个数扩容，扩容后之前的频率记录会丢失
+     */
+    void ensureCapacity(long maximum) {
+        final int capacity = (int) Math.min(Math.max(maximum, 8), MAXIMUM_CAPACITY);
+        if (table.length >= capacity) {
+            return;
+        }
+        table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        additions = 0;
+    }
+
+    int capacity() {
+        return table.length;
+    }
+
+    int frequency(int hash) {
+        final int h = spread(hash);
+        final int start = (h & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final int count = (int) ((table[indexOf(h, i)] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        final int h = spread(hash);
+        final int start = (h & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(h, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & (table.length - 1);
+    }
+
+    private static int spread(int h) {
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,449 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.Collections.sort;
+
+/**
+ * <p>只读的双键Map，由{@link DoubleKeyMap#freeze()}创建</p>
+ * <p>所有主键和键值对压缩到平行数组中：同一主键的键值对连续存放，顺序与创建时的遍历顺序相同；
+ * 主键和(主键下标, 副键)各有一个只保存下标的开放寻址表(int[]，负载因子不超过0.5)，
+ * 查找时先比较数组中的哈希值再比较键，不需要任何键值对对象，也不需要沿链表跳转</p>
+ * <p>每个键值对约占20字节(副键、值的引用，哈希值和索引表槽位)，嵌套HashMap的布局约为40字节以上。
+ * 公开的读方法与{@link DoubleKeyMap}相同，可以被多个线程同时读取</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+public final class FrozenDoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry<K1, Map<K2, V>>> {
+    private static final long serialVersionUID = -2471064128436203598L;
+
+    private final boolean ordered;
+    private final Object[] rowKeys;
+    private final int[] rowHashes;
+    /**
+     * 第r个主键的键值对位于[rowStart[r], rowStart[r + 1])
+     */
+    private final int[] rowStart;
+    /**
+     * 主键的开放寻址表，保存主键下标+1，0表示空位
+     */
+    private final int[] rowTable;
+    private final Object[] subKeys;
+    private final int[] subHashes;
+    private final Object[] values;
+    /**
+     * (主键下标, 副键)的开放寻址表，保存键值对下标+1，0表示空位
+     */
+    private final int[] entryTable;
+
+    private FrozenDoubleKeyMap(boolean ordered, Map.Entry<K1, Map<K2, V>>[] rows) {
+        this.ordered = ordered;
+        int entries = 0;
+        for (Map.Entry<K1, Map<K2, V>> row : rows) {
+            entries += row.getValue().size();
+        }
+        rowKeys = new Object[rows.length];
+        rowHashes = new int[rows.length];
+        rowStart = new int[rows.length + 1];
+        rowTable = new int[tableSizeFor(rows.length)];
+        subKeys = new Object[entries];
+        subHashes = new int[entries];
+        values = new Object[entries];
+        entryTable = new int[tableSizeFor(entries)];
+        int i = 0;
+        for (int r = 0; r < rows.length; r++) {
+            rowKeys[r] = rows[r].getKey();
+            rowHashes[r] = Objects.hashCode(rowKeys[r]);
+            rowStart[r] = i;
+            rowTable[free(rowTable, mix(rowHashes[r]))] = r + 1;
+            for (Map.Entry<K2, V> entry : rows[r].getValue().entrySet()) {
+                subKeys[i] = entry.getKey();
+                subHashes[i] = Objects.hashCode(entry.getKey());
+                values[i] = entry.getValue();
+                entryTable[free(entryTable, entryHash(r, subHashes[i]))] = i + 1;
+                i++;
+            }
+        }
+        rowStart[rows.length] = i;
+    }
+
+    static <K1, K2, V> FrozenDoubleKeyMap<K1, K2, V> of(DoubleKeyMap<K1, K2, V> map) {
+        return new FrozenDoubleKeyMap<>(map.isOrdered(), map.rowArray());
+    }
+
+    public V get(K1 k1, K2 k2) {
+        final int r = findRow(k1);
+        if (r < 0) {
+            return null;
+        }
+        final int i = findEntry(r, k2);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    /**
+     * @return 主键对应的副键Map只读视图，主键不存在时返回null
+     */
+    public Map<K2, V> get(K1 k1) {
+        final int r = findRow(k1);
+        return r < 0 ? null : new RowMap(r);
+    }
+
+    public Boolean containsKey(K1 k1) {
+        return findRow(k1) >= 0;
+    }
+
+    public Boolean containsKey(K1 k1, K2 k2) {
+        final int r = findRow(k1);
+        return r >= 0 && findEntry(r, k2) >= 0;
+    }
+
+    public Boolean containsSubKey(K2 k2) {
+        for (int r = 0; r < rowKeys.length; r++) {
+            if (findEntry(r, k2) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Boolean containsValue(V v) {
+        for (Object value : values) {
+            if (Objects.equals(value, v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * @return 主键个数
+     */
+    public int size() {
+        return rowKeys.length;
+    }
+
+    /**
+     * @return 键值对个数
+     */
+    public int entryCount() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return rowKeys.length == 0;
+    }
+
+    public Map<K1, Set<K2>> keys() {
+        final Map<K1, Set<K2>> keys = ordered ? new LinkedHashMap<>() : new HashMap<>((int) (rowKeys.length / 0.75f) + 1);
+        for (int r = 0; r < rowKeys.length; r++) {
+            keys.put((K1) rowKeys[r], new RowMap(r).keySet());
+        }
+        return keys;
+    }
+
+    /**
+     * @return 主键到副键Map的只读视图
+     */
+    public Map<K1, Map<K2, V>> toMap() {
+        return new RowsMap();
+    }
+
+    /**
+     * @return 包含相同键值对的可变DoubleKeyMap
+     */
+    public DoubleKeyMap<K1, K2, V> toDoubleKeyMap() {
+        final DoubleKeyMap<K1, K2, V> map = new DoubleKeyMap<>(ordered, (int) (rowKeys.length / 0.75f) + 1);
+        for (int r = 0; r < rowKeys.length; r++) {
+            final Map<K2, V> subMap = map.newSubMap(rowStart[r + 1] - rowStart[r]);
+            for (int i = rowStart[r]; i < rowStart[r + 1]; i++) {
+                subMap.put((K2) subKeys[i], (V) values[i]);
+            }
+            map.put((K1) rowKeys[r], subMap);
+        }
+        return map;
+    }
+
+    public List<V> getListOfAll() {
+        return Collections.unmodifiableList(Arrays.asList((V[]) values.clone()));
+    }
+
+    public List<V> getSortedListOfAll(Comparator<V> comparator) {
+        final List<V> list = Arrays.asList((V[]) values.clone());
+        sort(list, comparator);
+        return Collections.unmodifiableList(list);
+    }
+
+    public List<V> getListOfSubKey(K1 k1) {
+        return Collections.unmodifiableList(subList(k1));
+    }
+
+    public List<V> getSortedListOfSubKey(K1 k1, Comparator<V> comparator) {
+        final List<V> list = subList(k1);
+        sort(list, comparator);
+        return Collections.unmodifiableList(list);
+    }
+
+    private List<V> subList(K1 k1) {
+        final int r = findRow(k1);
+        if (r < 0) {
+            return new ArrayList<>(0);
+        }
+        return Arrays.asList((V[]) Arrays.copyOfRange(values, rowStart[r], rowStart[r + 1]));
+    }
+
+    /**
+     * 按数组顺序遍历每个键值对，不创建任何对象
+     */
+    public void forEach(TriConsumer<K1, K2, V> consumer) {
+        for (int r = 0; r < rowKeys.length; r++) {
+            final K1 k1 = (K1) rowKeys[r];
+            for (int i = rowStart[r]; i < rowStart[r + 1]; i++) {
+                consumer.accept(k1, (K2) subKeys[i], (V) values[i]);
+            }
+        }
+    }
+
+    public void forEach(BiConsumer<K1, Map<K2, V>> consumer) {
+        for (int r = 0; r < rowKeys.length; r++) {
+            consumer.accept((K1) rowKeys[r], new RowMap(r));
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<K1, Map<K2, V>>> iterator() {
+        return toMap().entrySet().iterator();
+    }
+
+    public Stream<Map.Entry<K1, Map<K2, V>>> stream() {
+        return toMap().entrySet().stream();
+    }
+
+    /**
+     * @return 三元组流，按主键切分，可以并行
+     */
+    public Stream<Triple<K1, K2, V>> tripleStream() {
+        return IntStream.range(0, rowKeys.length).boxed().flatMap(r -> IntStream.range(rowStart[r], rowStart[r + 1])
+                .mapToObj(i -> new Triple<>((K1) rowKeys[r], (K2) subKeys[i], (V) values[i])));
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K1, Map<K2, V>>> spliterator() {
+        return Spliterators.spliterator(iterator(), rowKeys.length,
+                Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0));
+    }
+
+    @Override
+    public boolean equals(Object thatObj) {
+        if (thatObj == this) {
+            return true;
+        }
+        if (!(thatObj instanceof FrozenDoubleKeyMap)) {
+            return false;
+        }
+        final FrozenDoubleKeyMap<?, ?, ?> that = (FrozenDoubleKeyMap<?, ?, ?>) thatObj;
+        return values.length == that.values.length && toMap().equals(that.toMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return toMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private int findRow(Object k1) {
+        final int hash = Objects.hashCode(k1);
+        final int mask = rowTable.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int r = rowTable[slot] - 1;
+            if (r < 0) {
+                return -1;
+            }
+            if (rowHashes[r] == hash && Objects.equals(rowKeys[r], k1)) {
+                return r;
+            }
+        }
+    }
+
+    private int findEntry(int r, Object k2) {
+        final int hash = Objects.hashCode(k2);
+        final int from = rowStart[r];
+        final int to = rowStart[r + 1];
+        final int mask = entryTable.length - 1;
+        for (int slot = entryHash(r, hash) & mask; ; slot = (slot + 1) & mask) {
+            final int i = entryTable[slot] - 1;
+            if (i < 0) {
+                return -1;
+            }
+            if (subHashes[i] == hash && i >= from && i < to && Objects.equals(subKeys[i], k2)) {
+                return i;
+            }
+        }
+    }
+
+    private static int free(int[] table, int hash) {
+        final int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int entryHash(int row, int subHash) {
+        return mix(31 * subHash + row);
+    }
+
+    /**
+     * MurmurHash3的32位混合函数
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return 不小于2 * size的2的幂，保证至少有一个空位
+     */
+    private static int tableSizeFor(int size) {
+        return Integer.highestOneBit(Math.max(2 * size - 1, 1)) << 1;
+    }
+
+    /**
+     * 一个主键下键值对的只读视图
+     */
+    private final class RowMap extends AbstractMap<K2, V> {
+        private final int row;
+
+        private RowMap(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public V get(Object key) {
+            final int i = findEntry(row, key);
+            return i < 0 ? null : (V) values[i];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return findEntry(row, key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return rowStart[row + 1] - rowStart[row];
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K2, ? super V> action) {
+            for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                action.accept((K2) subKeys[i], (V) values[i]);
+            }
+        }
+
+        @Override
+        public Set<Entry<K2, V>> entrySet() {
+            return new AbstractSet<Entry<K2, V>>() {
+                @Override
+                public Iterator<Entry<K2, V>> iterator() {
+                    return new Iterator<Entry<K2, V>>() {
+                        private int i = rowStart[row];
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < rowStart[row + 1];
+                        }
+
+                        @Override
+                        public Entry<K2, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<K2, V> entry = new SimpleImmutableEntry<>((K2) subKeys[i], (V) values[i]);
+                            i++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return RowMap.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * 主键到副键Map的只读视图
+     */
+    private final class RowsMap extends AbstractMap<K1, Map<K2, V>> {
+        @Override
+        public Map<K2, V> get(Object key) {
+            final int r = findRow(key);
+            return r < 0 ? null : new RowMap(r);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return findRow(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return rowKeys.length;
+        }
+
+        @Override
+        public Set<Entry<K1, Map<K2, V>>> entrySet() {
+            return new AbstractSet<Entry<K1, Map<K2, V>>>() {
+                @Override
+                public Iterator<Entry<K1, Map<K2, V>>> iterator() {
+                    return new Iterator<Entry<K1, Map<K2, V>>>() {
+                        private int r;
+
+                        @Override
+                        public boolean hasNext() {
+                            return r < rowKeys.length;
+                        }
+
+                        @Override
+                        public Entry<K1, Map<K2, V>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<K1, Map<K2, V>> entry = new SimpleImmutableEntry<>((K1) rowKeys[r], new RowMap(r));
+                            r++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return rowKeys.length;
+                }
+            };
+        }
+    }
+}
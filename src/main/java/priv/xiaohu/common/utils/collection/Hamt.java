@@ -0,0 +1,377 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>不可变的哈希数组映射字典树(Hash Array Mapped Trie)</p>
+ * <p>每层使用哈希值的5位作为下标，节点用位图压缩子节点数组。put和remove只复制从根到目标的路径，
+ * 复杂度为O(log32 n)，其他部分与旧版本共享。哈希值完全相同的键放在冲突节点中</p>
+ *
+ * @param <K> 键
+ * @param <V> 值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+final class Hamt<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final Hamt<?, ?> EMPTY = new Hamt<>(null, 0);
+    /**
+     * 代替null键，节点数组中键为null表示该位置是子节点
+     */
+    private static final Object NULL_KEY = new Object();
+    private static final Object NOT_FOUND = new Object();
+
+    private final Node root;
+    private final int size;
+
+    private Hamt(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    static <K, V> Hamt<K, V> empty() {
+        return (Hamt<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    V get(Object key) {
+        final Object v = find(key);
+        return v == NOT_FOUND ? null : (V) v;
+    }
+
+    boolean containsKey(Object key) {
+        return find(key) != NOT_FOUND;
+    }
+
+    private Object find(Object key) {
+        if (root == null) {
+            return NOT_FOUND;
+        }
+        final Object k = mask(key);
+        return root.find(0, hash(k), k);
+    }
+
+    Hamt<K, V> put(K key, V value) {
+        final Object k = mask(key);
+        final boolean[] added = new boolean[1];
+        final Node node = (root == null ? BitmapNode.EMPTY : root).assoc(0, hash(k), k, value, added);
+        if (node == root) {
+            return this;
+        }
+        return new Hamt<>(node, added[0] ? size + 1 : size);
+    }
+
+    Hamt<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        final Object k = mask(key);
+        final Node node = root.without(0, hash(k), k);
+        if (node == root) {
+            return this;
+        }
+        return node == null ? empty() : new Hamt<>(node, size - 1);
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    private static Object mask(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private static Object unmask(Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+
+    private static int hash(Object key) {
+        if (key == NULL_KEY) {
+            return 0;
+        }
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == b || a.equals(b);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private abstract static class Node {
+        /**
+         * 键值对依次存放；位图节点中键为null时，下一个位置是子节点
+         */
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return 删除后的节点，节点变为空时返回null，不存在该键时返回自身
+         */
+        abstract Node without(int shift, int hash, Object key);
+
+        abstract Object find(int shift, int hash, Object key);
+
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(unmask(array[i]), array[i + 1]);
+                }
+            }
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) * 2;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            final int bit = bit(hash, shift);
+            final int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                final Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, idx);
+                newArray[idx] = key;
+                newArray[idx + 1] = value;
+                System.arraycopy(array, idx, newArray, idx + 2, array.length - idx);
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            final Object k = array[idx];
+            final Object v = array[idx + 1];
+            if (k == null) {
+                final Node node = ((Node) v).assoc(shift + 5, hash, key, value, added);
+                return node == v ? this : with(idx + 1, node);
+            }
+            if (eq(key, k)) {
+                return v == value ? this : with(idx + 1, value);
+            }
+            added[0] = true;
+            final Object[] newArray = array.clone();
+            newArray[idx] = null;
+            newArray[idx + 1] = createNode(shift + 5, k, v, hash, key, value);
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            final int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            final int idx = index(bit);
+            final Object k = array[idx];
+            if (k == null) {
+                final Node node = ((Node) array[idx + 1]).without(shift + 5, hash, key);
+                if (node == array[idx + 1]) {
+                    return this;
+                }
+                if (node != null) {
+                    return with(idx + 1, node);
+                }
+            } else if (!eq(key, k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            final Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            final int idx = index(bit);
+            final Object k = array[idx];
+            if (k == null) {
+                return ((Node) array[idx + 1]).find(shift + 5, hash, key);
+            }
+            return eq(key, k) ? array[idx + 1] : NOT_FOUND;
+        }
+
+        private BitmapNode with(int idx, Object value) {
+            final Object[] newArray = array.clone();
+            newArray[idx] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            final int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            final boolean[] added = new boolean[1];
+            return EMPTY.assoc(shift, hash1, key1, value1, added).assoc(shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * 哈希值完全相同的键值对
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        private CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (eq(key, array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // 哈希值不同，放到上一层的位图节点中分开
+                return new BitmapNode(bit(this.hash, shift), new Object[]{null, this}).assoc(shift, hash, key, value, added);
+            }
+            final int idx = indexOf(key);
+            if (idx >= 0) {
+                if (array[idx + 1] == value) {
+                    return this;
+                }
+                final Object[] newArray = array.clone();
+                newArray[idx + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            added[0] = true;
+            final Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            final int idx = indexOf(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            final Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int idx = indexOf(key);
+            return idx < 0 ? NOT_FOUND : array[idx + 1];
+        }
+    }
+
+    /**
+     * 用显式栈深度优先遍历所有键值对
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        /**
+         * 32位哈希每层5位，最多7层位图节点加1层冲突节点
+         */
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = -1;
+        private Map.Entry<K, V> next;
+
+        private EntryIterator(Node root) {
+            if (root != null) {
+                push(root.array);
+                advance();
+            }
+        }
+
+        private void push(Object[] array) {
+            depth++;
+            arrays[depth] = array;
+            positions[depth] = 0;
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                final Object[] array = arrays[depth];
+                final int pos = positions[depth];
+                if (pos >= array.length) {
+                    arrays[depth--] = null;
+                    continue;
+                }
+                positions[depth] = pos + 2;
+                if (array[pos] == null) {
+                    push(((Node) array[pos + 1]).array);
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) unmask(array[pos]), (V) array[pos + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>以两个int为键的双键Map</p>
+ * <p>两个键合并成一个long存放在数组中，使用开放寻址(线性探测)，get、put、remove、containsKey都不装箱、不创建对象。
+ * 值不能为null，get返回null表示不存在</p>
+ * <p>与{@link DoubleKeyMap}不同，{@link #size()}返回的是键值对个数</p>
+ *
+ * @param <V> 值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+public class IntIntKeyMap<V> implements Serializable {
+    private static final long serialVersionUID = 4416020386425335722L;
+
+    private final static int DEFUALT_SIZE = 1 << 4;
+    private final static float LOAD_FACTOR = 0.75f;
+
+    /**
+     * 高32位为主键，低32位为副键
+     */
+    private long[] keys;
+    /**
+     * null表示空槽
+     */
+    private Object[] values;
+    private int size;
+
+    public IntIntKeyMap() {
+        this(DEFUALT_SIZE);
+    }
+
+    /**
+     * @param size 预计的键值对个数
+     */
+    public IntIntKeyMap(int size) {
+        final int capacity = Integer.highestOneBit(Math.max((int) (size / LOAD_FACTOR), 1)) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    public V get(int k1, int k2) {
+        final int slot = find(key(k1, k2));
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public V getOrDefault(int k1, int k2, V defaultValue) {
+        final int slot = find(key(k1, k2));
+        return slot < 0 ? defaultValue : (V) values[slot];
+    }
+
+    public boolean containsKey(int k1, int k2) {
+        return find(key(k1, k2)) >= 0;
+    }
+
+    /**
+     * @return 旧值，不存在时为null
+     */
+    public V put(int k1, int k2, V v) {
+        Objects.requireNonNull(v);
+        final long key = key(k1, k2);
+        int slot = find(key);
+        if (slot >= 0) {
+            final V old = (V) values[slot];
+            values[slot] = v;
+            return old;
+        }
+        if (size + 1 > values.length * LOAD_FACTOR) {
+            resize();
+            slot = find(key);
+        }
+        slot = ~slot;
+        keys[slot] = key;
+        values[slot] = v;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return 已存在的值，不存在时放入v并返回null
+     */
+    public V putIfAbsent(int k1, int k2, V v) {
+        final V old = get(k1, k2);
+        return old != null ? old : put(k1, k2, v);
+    }
+
+    /**
+     * @return 被删除的值，不存在时为null
+     */
+    public V remove(int k1, int k2) {
+        final int slot = find(key(k1, k2));
+        if (slot < 0) {
+            return null;
+        }
+        final V old = (V) values[slot];
+        delete(slot);
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 遍历所有键值对，不装箱、不创建对象
+     */
+    public void forEach(IntIntObjConsumer<? super V> consumer) {
+        final long[] ks = keys;
+        final Object[] vs = values;
+        for (int i = 0; i < vs.length; i++) {
+            if (vs[i] != null) {
+                consumer.accept((int) (ks[i] >>> 32), (int) ks[i], (V) vs[i]);
+            }
+        }
+    }
+
+    /**
+     * @return 包含相同键值对的DoubleKeyMap(键会被装箱)
+     */
+    public DoubleKeyMap<Integer, Integer, V> toDoubleKeyMap() {
+        final DoubleKeyMap<Integer, Integer, V> map = new DoubleKeyMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    private int find(long key) {
+        final Object[] vs = values;
+        final int mask = vs.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            if (vs[slot] == null) {
+                return ~slot;
+            }
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 删除槽中的键值对，并把后面同一探测链上的元素前移，不留删除标记
+     */
+    private void delete(int slot) {
+        final long[] ks = keys;
+        final Object[] vs = values;
+        final int mask = vs.length - 1;
+        size--;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (vs[next] == null) {
+                break;
+            }
+            final int ideal = hash(ks[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                ks[hole] = ks[next];
+                vs[hole] = vs[next];
+                hole = next;
+            }
+        }
+        vs[hole] = null;
+    }
+
+    private void resize() {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final int capacity = oldValues.length << 1;
+        final int mask = capacity - 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static long key(int k1, int k2) {
+        return ((long) k1 << 32) | (k2 & 0xFFFFFFFFL);
+    }
+
+    /**
+     * MurmurHash3的64位混合函数
+     */
+    private static int hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,215 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>以两个long为键的双键Map</p>
+ * <p>键直接存放在long数组中，使用开放寻址(线性探测)，get、put、remove、containsKey都不装箱、不创建对象。
+ * 值不能为null，get返回null表示不存在</p>
+ * <p>与{@link DoubleKeyMap}不同，{@link #size()}返回的是键值对个数</p>
+ *
+ * @param <V> 值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+public class LongLongKeyMap<V> implements Serializable {
+    private static final long serialVersionUID = -1934075270312580741L;
+
+    private final static int DEFUALT_SIZE = 1 << 4;
+    private final static float LOAD_FACTOR = 0.75f;
+
+    private long[] keys1;
+    private long[] keys2;
+    /**
+     * null表示空槽
+     */
+    private Object[] values;
+    private int size;
+
+    public LongLongKeyMap() {
+        this(DEFUALT_SIZE);
+    }
+
+    /**
+     * @param size 预计的键值对个数
+     */
+    public LongLongKeyMap(int size) {
+        final int capacity = Integer.highestOneBit(Math.max((int) (size / LOAD_FACTOR), 1)) << 1;
+        keys1 = new long[capacity];
+        keys2 = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    public V get(long k1, long k2) {
+        final int slot = find(k1, k2);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public V getOrDefault(long k1, long k2, V defaultValue) {
+        final int slot = find(k1, k2);
+        return slot < 0 ? defaultValue : (V) values[slot];
+    }
+
+    public boolean containsKey(long k1, long k2) {
+        return find(k1, k2) >= 0;
+    }
+
+    /**
+     * @return 旧值，不存在时为null
+     */
+    public V put(long k1, long k2, V v) {
+        Objects.requireNonNull(v);
+        int slot = find(k1, k2);
+        if (slot >= 0) {
+            final V old = (V) values[slot];
+            values[slot] = v;
+            return old;
+        }
+        if (size + 1 > values.length * LOAD_FACTOR) {
+            resize();
+            slot = find(k1, k2);
+        }
+        slot = ~slot;
+        keys1[slot] = k1;
+        keys2[slot] = k2;
+        values[slot] = v;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return 已存在的值，不存在时放入v并返回null
+     */
+    public V putIfAbsent(long k1, long k2, V v) {
+        final V old = get(k1, k2);
+        return old != null ? old : put(k1, k2, v);
+    }
+
+    /**
+     * @return 被删除的值，不存在时为null
+     */
+    public V remove(long k1, long k2) {
+        final int slot = find(k1, k2);
+        if (slot < 0) {
+            return null;
+        }
+        final V old = (V) values[slot];
+        delete(slot);
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 遍历所有键值对，不装箱、不创建对象
+     */
+    public void forEach(LongLongObjConsumer<? super V> consumer) {
+        final long[] k1s = keys1;
+        final long[] k2s = keys2;
+        final Object[] vs = values;
+        for (int i = 0; i < vs.length; i++) {
+            if (vs[i] != null) {
+                consumer.accept(k1s[i], k2s[i], (V) vs[i]);
+            }
+        }
+    }
+
+    /**
+     * @return 包含相同键值对的DoubleKeyMap(键会被装箱)
+     */
+    public DoubleKeyMap<Long, Long, V> toDoubleKeyMap() {
+        final DoubleKeyMap<Long, Long, V> map = new DoubleKeyMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    private int find(long k1, long k2) {
+        final Object[] vs = values;
+        final int mask = vs.length - 1;
+        int slot = hash(k1, k2) & mask;
+        while (true) {
+            if (vs[slot] == null) {
+                return ~slot;
+            }
+            if (keys1[slot] == k1 && keys2[slot] == k2) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 删除槽中的键值对，并把后面同一探测链上的元素前移，不留删除标记
+     */
+    private void delete(int slot) {
+        final long[] k1s = keys1;
+        final long[] k2s = keys2;
+        final Object[] vs = values;
+        final int mask = vs.length - 1;
+        size--;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (vs[next] == null) {
+                break;
+            }
+            final int ideal = hash(k1s[next], k2s[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                k1s[hole] = k1s[next];
+                k2s[hole] = k2s[next];
+                vs[hole] = vs[next];
+                hole = next;
+            }
+        }
+        vs[hole] = null;
+    }
+
+    private void resize() {
+        final long[] oldKeys1 = keys1;
+        final long[] oldKeys2 = keys2;
+        final Object[] oldValues = values;
+        final int capacity = oldValues.length << 1;
+        final int mask = capacity - 1;
+        keys1 = new long[capacity];
+        keys2 = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys1[i], oldKeys2[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys1[slot] = oldKeys1[i];
+                keys2[slot] = oldKeys2[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * 组合两个键并用MurmurHash3的64位混合函数打散
+     */
+    private static int hash(long k1, long k2) {
+        long h = k1 * 0x9E3779B97F4A7C15L + k2;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,17 @@
+package priv.xiaohu.common.utils.collection;
+
+/**
+ * 接收两个long键和一个值的函数式接口，用于{@link LongLongKeyMap}的遍历
+ *
+ * @param <V> 值
+ * @author zxh
+ */
+@FunctionalInterface
+public interface LongLongObjConsumer<V> {
+    /**
+     * @param k1 主键
+     * @param k2 副键
+     * @param v  值
+     */
+    void accept(long k1, long k2, V v);
+}
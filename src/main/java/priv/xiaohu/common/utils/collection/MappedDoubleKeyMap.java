@@ -0,0 +1,457 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>以内存映射方式读取的只读双键Map</p>
+ * <p>由{@link #write(DoubleKeyMap, Path, DoubleKeyMapCodec, DoubleKeyMapCodec, DoubleKeyMapCodec)}把DoubleKeyMap写成紧凑的二进制文件，
+ * {@link #open(Path, DoubleKeyMapCodec, DoubleKeyMapCodec, DoubleKeyMapCodec)}只把块索引读入堆中，
+ * 键值对留在映射的文件里，查询时直接在映射区域中二分查找并解码，不需要把整个文件反序列化到堆上</p>
+ * <p>文件格式(大端序)：</p>
+ * <pre>
+ * 文件头  int MAGIC, int VERSION
+ * 数据块  每个主键一个块：主键 | int n | int[n] 副键哈希(升序) | int[n] 键值对相对偏移 | n个(副键, 值)
+ * 块索引  按主键哈希升序：(int 主键哈希, long 块偏移) × 主键个数
+ * 过滤器  (主键, 副键)的布隆过滤器：int 哈希函数个数, int long个数, long[] 位数组
+ * 文件尾  long 块索引偏移, int 主键个数, long 键值对个数, long 过滤器偏移(没有时为-1), int MAGIC
+ * </pre>
+ * <p>打开时布隆过滤器被复制到堆上，大部分不存在的(主键, 副键)不需要访问映射区域，避免缺页。
+ * 仍然可以打开版本1(没有过滤器)的文件</p>
+ * <p>每个主键在文件中只保存一次，块内的键值对不重复保存主键。文件超过2G时按块边界分段映射，单个块不能超过2G。
+ * 实例可以被多个线程同时读取</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+public class MappedDoubleKeyMap<K1, K2, V> implements Closeable {
+
+    private static final int MAGIC = 0x444B4D31;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int V1_FOOTER_SIZE = 24;
+    private static final int FOOTER_SIZE = 32;
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final DoubleKeyMapCodec<K1> k1Codec;
+    private final DoubleKeyMapCodec<K2> k2Codec;
+    private final DoubleKeyMapCodec<V> vCodec;
+    /**
+     * 块索引，按主键哈希升序
+     */
+    private final int[] rowHashes;
+    private final long[] rowOffsets;
+    private final long[] segmentStarts;
+    private final MappedByteBuffer[] segments;
+    private final long entryCount;
+    /**
+     * 没有过滤器时为null
+     */
+    private final BloomFilter filter;
+
+    private MappedDoubleKeyMap(FileChannel channel, DoubleKeyMapCodec<K1> k1Codec, DoubleKeyMapCodec<K2> k2Codec,
+                               DoubleKeyMapCodec<V> vCodec) throws IOException {
+        this.channel = channel;
+        this.k1Codec = k1Codec;
+        this.k2Codec = k2Codec;
+        this.vCodec = vCodec;
+        final long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE + V1_FOOTER_SIZE) {
+            throw new IOException("文件格式错误：长度不足");
+        }
+        final ByteBuffer header = read(channel, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("文件格式错误：不是DoubleKeyMap文件");
+        }
+        final int version = header.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("不支持的文件版本: " + version);
+        }
+        final int footerSize = version == 1 ? V1_FOOTER_SIZE : FOOTER_SIZE;
+        final ByteBuffer footer = read(channel, fileSize - footerSize, footerSize);
+        final long indexOffset = footer.getLong();
+        final int rowCount = footer.getInt();
+        entryCount = footer.getLong();
+        final long filterOffset = version == 1 ? -1 : footer.getLong();
+        if (footer.getInt() != MAGIC) {
+            throw new IOException("文件格式错误：不是DoubleKeyMap文件");
+        }
+        if (filterOffset < 0) {
+            filter = null;
+        } else {
+            final long filterSize = fileSize - footerSize - filterOffset;
+            if (filterSize > Integer.MAX_VALUE) {
+                throw new IOException("布隆过滤器超过2G");
+            }
+            filter = BloomFilter.read(read(channel, filterOffset, (int) filterSize));
+        }
+        final ByteBuffer index = read(channel, indexOffset, rowCount * 12);
+        rowHashes = new int[rowCount];
+        rowOffsets = new long[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            rowHashes[i] = index.getInt();
+            rowOffsets[i] = index.getLong();
+        }
+        // 按块边界分段，每段不超过2G
+        final long[] starts = rowOffsets.clone();
+        Arrays.sort(starts);
+        final long[] segmentStarts = new long[Math.max(rowCount, 1)];
+        final long[] segmentEnds = new long[segmentStarts.length];
+        int segmentCount = 0;
+        for (int i = 0; i < starts.length; i++) {
+            final long end = i + 1 < starts.length ? starts[i + 1] : indexOffset;
+            if (end - starts[i] > MAX_SEGMENT_SIZE) {
+                throw new IOException("单个主键的数据超过2G");
+            }
+            if (segmentCount == 0 || end - segmentStarts[segmentCount - 1] > MAX_SEGMENT_SIZE) {
+                segmentStarts[segmentCount++] = starts[i];
+            }
+            segmentEnds[segmentCount - 1] = end;
+        }
+        this.segmentStarts = Arrays.copyOf(segmentStarts, segmentCount);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStarts[i], segmentEnds[i] - segmentStarts[i]);
+        }
+    }
+
+    /**
+     * 以内存映射方式打开文件
+     *
+     * @param path    文件路径
+     * @param k1Codec 主键编解码器
+     * @param k2Codec 副键编解码器
+     * @param vCodec  值编解码器
+     * @return 只读的双键Map，使用完毕后需要关闭
+     * @throws IOException 文件读取失败或格式错误
+     */
+    public static <K1, K2, V> MappedDoubleKeyMap<K1, K2, V> open(Path path, DoubleKeyMapCodec<K1> k1Codec,
+                                                                DoubleKeyMapCodec<K2> k2Codec, DoubleKeyMapCodec<V> vCodec) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedDoubleKeyMap<>(channel, k1Codec, k2Codec, vCodec);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 把DoubleKeyMap写成二进制文件，已存在的文件会被覆盖。键和值都不能为null。同时写入误判率为1%的布隆过滤器
+     *
+     * @param map     要写入的集合
+     * @param path    文件路径
+     * @param k1Codec 主键编解码器
+     * @param k2Codec 副键编解码器
+     * @param vCodec  值编解码器
+     * @throws IOException 写入失败
+     */
+    public static <K1, K2, V> void write(DoubleKeyMap<K1, K2, V> map, Path path, DoubleKeyMapCodec<K1> k1Codec,
+                                         DoubleKeyMapCodec<K2> k2Codec, DoubleKeyMapCodec<V> vCodec) throws IOException {
+        write(map, path, k1Codec, k2Codec, vCodec, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * 把DoubleKeyMap写成二进制文件，已存在的文件会被覆盖。键和值都不能为null
+     *
+     * @param map               要写入的集合
+     * @param path              文件路径
+     * @param k1Codec           主键编解码器
+     * @param k2Codec           副键编解码器
+     * @param vCodec            值编解码器
+     * @param falsePositiveRate 布隆过滤器的误判率，为0时不写入过滤器
+     * @throws IOException 写入失败
+     */
+    public static <K1, K2, V> void write(DoubleKeyMap<K1, K2, V> map, Path path, DoubleKeyMapCodec<K1> k1Codec,
+                                         DoubleKeyMapCodec<K2> k2Codec, DoubleKeyMapCodec<V> vCodec,
+                                         double falsePositiveRate) throws IOException {
+        final BloomFilter filter = falsePositiveRate == 0 ? null : new BloomFilter(entryCount(map), falsePositiveRate);
+        final int[] hashes = new int[map.size()];
+        final long[] offsets = new long[map.size()];
+        int rowCount = 0;
+        long entryCount = 0;
+        try (CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+             DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream();
+            final DataOutputStream rowOut = new DataOutputStream(rowBuffer);
+            for (Map.Entry<K1, Map<K2, V>> row : map) {
+                final Map<K2, V> subMap = row.getValue();
+                if (subMap == null || subMap.isEmpty()) {
+                    continue;
+                }
+                hashes[rowCount] = k1Codec.hash(row.getKey());
+                offsets[rowCount] = counter.count;
+                rowCount++;
+                k1Codec.write(row.getKey(), out);
+                // 副键按哈希排序，查找时二分
+                final Object[] keys = subMap.keySet().toArray();
+                final long[] order = sortByHash(keys, k2Codec);
+                final int n = keys.length;
+                final int[] relative = new int[n];
+                rowBuffer.reset();
+                final int k1Hash = hashes[rowCount - 1];
+                for (int j = 0; j < n; j++) {
+                    @SuppressWarnings("unchecked") final K2 k2 = (K2) keys[(int) order[j]];
+                    if (filter != null) {
+                        filter.put(BloomFilter.hash(k1Hash, (int) (order[j] >> 32)));
+                    }
+                    relative[j] = rowBuffer.size();
+                    k2Codec.write(k2, rowOut);
+                    vCodec.write(subMap.get(k2), rowOut);
+                }
+                out.writeInt(n);
+                for (int j = 0; j < n; j++) {
+                    out.writeInt((int) (order[j] >> 32));
+                }
+                for (int j = 0; j < n; j++) {
+                    out.writeInt(relative[j]);
+                }
+                rowBuffer.writeTo(out);
+                entryCount += n;
+            }
+            final long indexOffset = counter.count;
+            final long[] indexOrder = new long[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                indexOrder[i] = ((long) hashes[i] << 32) | i;
+            }
+            Arrays.sort(indexOrder);
+            for (long packed : indexOrder) {
+                out.writeInt((int) (packed >> 32));
+                out.writeLong(offsets[(int) packed]);
+            }
+            final long filterOffset = filter == null ? -1 : counter.count;
+            if (filter != null) {
+                filter.writeTo(out);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(rowCount);
+            out.writeLong(entryCount);
+            out.writeLong(filterOffset);
+            out.writeInt(MAGIC);
+        }
+    }
+
+    private static long entryCount(DoubleKeyMap<?, ?, ?> map) {
+        long count = 0;
+        for (Map.Entry<?, ? extends Map<?, ?>> row : map) {
+            count += row.getValue() == null ? 0 : row.getValue().size();
+        }
+        return count;
+    }
+
+    /**
+     * @return 高32位为哈希值，低32位为原下标，按哈希升序
+     */
+    @SuppressWarnings("unchecked")
+    private static <K2> long[] sortByHash(Object[] keys, DoubleKeyMapCodec<K2> codec) {
+        final long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = ((long) codec.hash((K2) keys[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    public V get(K1 k1, K2 k2) {
+        final ByteBuffer buffer = entry(k1, k2);
+        return buffer == null ? null : vCodec.read(buffer);
+    }
+
+    public boolean containsKey(K1 k1, K2 k2) {
+        return entry(k1, k2) != null;
+    }
+
+    public boolean containsKey(K1 k1) {
+        return row(k1) != null;
+    }
+
+    /**
+     * @return 主键对应的副键Map(解码到堆上的副本)，主键不存在时返回null
+     */
+    public Map<K2, V> get(K1 k1) {
+        final ByteBuffer buffer = row(k1);
+        if (buffer == null) {
+            return null;
+        }
+        final int n = buffer.getInt();
+        buffer.position(buffer.position() + 8 * n);
+        final Map<K2, V> subMap = new LinkedHashMap<>((int) (n / 0.75f) + 1);
+        for (int j = 0; j < n; j++) {
+            subMap.put(k2Codec.read(buffer), vCodec.read(buffer));
+        }
+        return subMap;
+    }
+
+    /**
+     * @return 主键个数
+     */
+    public int size() {
+        return rowHashes.length;
+    }
+
+    /**
+     * @return 键值对个数
+     */
+    public long entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * 按块顺序遍历所有键值对
+     */
+    public void forEach(TriConsumer<K1, K2, V> consumer) {
+        for (long offset : rowOffsets) {
+            final ByteBuffer buffer = buffer(offset);
+            final K1 k1 = k1Codec.read(buffer);
+            final int n = buffer.getInt();
+            buffer.position(buffer.position() + 8 * n);
+            for (int j = 0; j < n; j++) {
+                consumer.accept(k1, k2Codec.read(buffer), vCodec.read(buffer));
+            }
+        }
+    }
+
+    /**
+     * @return 解码到堆上的DoubleKeyMap
+     */
+    public DoubleKeyMap<K1, K2, V> toDoubleKeyMap() {
+        final DoubleKeyMap<K1, K2, V> map = new DoubleKeyMap<>((int) (size() / 0.75f) + 1);
+        forEach((TriConsumer<K1, K2, V>) map::put);
+        return map;
+    }
+
+    /**
+     * 关闭文件。Java 8无法主动解除内存映射，映射区域在被垃圾回收后释放
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return 定位到主键之后(副键个数处)的buffer，主键不存在时返回null
+     */
+    private ByteBuffer row(K1 k1) {
+        final int hash = k1Codec.hash(k1);
+        for (int i = lowerBound(rowHashes, hash); i < rowHashes.length && rowHashes[i] == hash; i++) {
+            final ByteBuffer buffer = buffer(rowOffsets[i]);
+            if (k1.equals(k1Codec.read(buffer))) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 定位到值的buffer，不存在时返回null
+     */
+    private ByteBuffer entry(K1 k1, K2 k2) {
+        if (filter != null && !filter.mightContain(BloomFilter.hash(k1Codec.hash(k1), k2Codec.hash(k2)))) {
+            return null;
+        }
+        final ByteBuffer buffer = row(k1);
+        if (buffer == null) {
+            return null;
+        }
+        final int n = buffer.getInt();
+        final int hashes = buffer.position();
+        final int relative = hashes + 4 * n;
+        final int entries = relative + 4 * n;
+        final int hash = k2Codec.hash(k2);
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (buffer.getInt(hashes + 4 * mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int j = lo; j < n && buffer.getInt(hashes + 4 * j) == hash; j++) {
+            buffer.position(entries + buffer.getInt(relative + 4 * j));
+            if (k2.equals(k2Codec.read(buffer))) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer buffer(long offset) {
+        int segment = Arrays.binarySearch(segmentStarts, offset);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        final ByteBuffer buffer = segments[segment].duplicate();
+        buffer.position((int) (offset - segmentStarts[segment]));
+        return buffer;
+    }
+
+    private static int lowerBound(int[] array, int key) {
+        int lo = 0;
+        int hi = array.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (array[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("文件格式错误：长度不足");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 记录已写入字节数的输出流
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
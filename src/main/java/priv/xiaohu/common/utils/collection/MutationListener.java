@@ -0,0 +1,38 @@
+package priv.xiaohu.common.utils.collection;
+
+/**
+ * <p>{@link DoubleKeyMap}的修改监听器，用于增量维护索引等附加结构</p>
+ * <p>只能感知通过DoubleKeyMap自身方法进行的修改，直接修改{@link DoubleKeyMap#get(Object)}返回的副键Map不会被通知</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+interface MutationListener<K1, K2, V> {
+
+    /**
+     * 放入或替换了一个值之后调用
+     *
+     * @param k1      主键
+     * @param k2      副键
+     * @param existed 放入之前是否已存在该(主键, 副键)
+     * @param old     旧值，不存在时为null
+     * @param v       新值
+     */
+    void put(K1 k1, K2 k2, boolean existed, V old, V v);
+
+    /**
+     * 删除了一个值之后调用
+     *
+     * @param k1 主键
+     * @param k2 副键
+     * @param v  被删除的值
+     */
+    void remove(K1 k1, K2 k2, V v);
+
+    /**
+     * 清空集合之后调用
+     */
+    void clear();
+}
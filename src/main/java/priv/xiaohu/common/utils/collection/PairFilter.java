@@ -0,0 +1,87 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.Objects;
+
+/**
+ * <p>{@link DoubleKeyMap}中(主键, 副键)的布隆过滤器，随修改增量维护</p>
+ * <p>放入新的(主键, 副键)时加入过滤器；布隆过滤器不能删除，删除次数超过当前键值对个数的一半，
+ * 或键值对个数超过创建时的容量时，按当前内容重建</p>
+ * <p>修改由集合的写操作串行调用；每次修改后重新写入volatile的filter，
+ * 不加锁的读操作读取filter之后能看到此前放入的所有键，只可能误判为存在，不会漏判</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+class PairFilter<K1, K2, V> implements MutationListener<K1, K2, V> {
+    private static final int MIN_CAPACITY = 1 << 10;
+
+    private final DoubleKeyMap<K1, K2, V> map;
+    private final double falsePositiveRate;
+    private volatile BloomFilter filter;
+    private long capacity;
+    /**
+     * 当前键值对个数和上次重建后的删除次数
+     */
+    private long entries;
+    private long removals;
+
+    PairFilter(DoubleKeyMap<K1, K2, V> map, double falsePositiveRate) {
+        this.map = map;
+        this.falsePositiveRate = falsePositiveRate;
+        rebuild();
+    }
+
+    /**
+     * @return false时一定不存在
+     */
+    boolean mightContain(Object k1, Object k2) {
+        return filter.mightContain(hash(k1, k2));
+    }
+
+    @Override
+    public void put(K1 k1, K2 k2, boolean existed, V old, V v) {
+        if (existed) {
+            return;
+        }
+        if (++entries > capacity) {
+            rebuild();
+        } else {
+            final BloomFilter current = filter;
+            current.put(hash(k1, k2));
+            // 重新写入volatile字段，发布刚设置的位
+            filter = current;
+        }
+    }
+
+    @Override
+    public void remove(K1 k1, K2 k2, V v) {
+        entries--;
+        if (++removals > Math.max(entries / 2, MIN_CAPACITY)) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void clear() {
+        entries = 0;
+        removals = 0;
+        filter.clear();
+    }
+
+    private void rebuild() {
+        final long[] count = {0};
+        map.forEach((TriConsumer<K1, K2, V>) (k1, k2, v) -> count[0]++);
+        entries = count[0];
+        removals = 0;
+        capacity = Math.max(entries * 2, MIN_CAPACITY);
+        final BloomFilter rebuilt = new BloomFilter(capacity, falsePositiveRate);
+        map.forEach((TriConsumer<K1, K2, V>) (k1, k2, v) -> rebuilt.put(hash(k1, k2)));
+        filter = rebuilt;
+    }
+
+    private static long hash(Object k1, Object k2) {
+        return BloomFilter.hash(Objects.hashCode(k1), Objects.hashCode(k2));
+    }
+}
@@ -0,0 +1,18 @@
+package priv.xiaohu.common.utils.collection;
+
+/**
+ * @author zxh
+ * @see TriConsumer
+ */
+@FunctionalInterface
+public interface PentaConsumer<V1, V2, V3, V4, V5> {
+    /**
+     * 接受五个参数没有返回值的函数式接口
+     * @param v1 值1
+     * @param v2 值2
+     * @param v3 值3
+     * @param v4 值4
+     * @param v5 值5
+     */
+    void accept(V1 v1, V2 v2, V3 v3, V4 v4, V5 v5);
+}
@@ -0,0 +1,389 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>不可变的双键Map集合</p>
+ * <p>主键和副键两层都使用哈希数组映射字典树({@link Hamt})，修改方法不改变当前对象，而是返回新的版本，
+ * 只复制从根到被修改位置的路径(O(log n))，其余部分与旧版本共享。
+ * 任意版本都可以被多个线程同时读取和遍历，不需要加锁或复制</p>
+ * <p>需要在多个线程之间发布新版本时使用{@link SnapshotDoubleKeyMap}</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+public final class PersistentDoubleKeyMap<K1, K2, V> implements Serializable, Iterable<Map.Entry<K1, Map<K2, V>>> {
+    private static final long serialVersionUID = 6914728560021370437L;
+
+    private static final PersistentDoubleKeyMap<?, ?, ?> EMPTY = new PersistentDoubleKeyMap<>(Hamt.empty(), 0);
+
+    private final transient Hamt<K1, Hamt<K2, V>> rows;
+    private final transient int entries;
+
+    private PersistentDoubleKeyMap(Hamt<K1, Hamt<K2, V>> rows, int entries) {
+        this.rows = rows;
+        this.entries = entries;
+    }
+
+    /**
+     * @return 空集合
+     */
+    public static <K1, K2, V> PersistentDoubleKeyMap<K1, K2, V> empty() {
+        return (PersistentDoubleKeyMap<K1, K2, V>) EMPTY;
+    }
+
+    /**
+     * @param that 要复制的双键Map
+     * @return 包含相同键值对的不可变集合
+     */
+    public static <K1, K2, V> PersistentDoubleKeyMap<K1, K2, V> of(DoubleKeyMap<K1, K2, V> that) {
+        Hamt<K1, Hamt<K2, V>> rows = Hamt.empty();
+        int entries = 0;
+        for (Map.Entry<K1, Map<K2, V>> entry : that) {
+            Hamt<K2, V> row = Hamt.empty();
+            for (Map.Entry<K2, V> subEntry : entry.getValue().entrySet()) {
+                row = row.put(subEntry.getKey(), subEntry.getValue());
+            }
+            if (!row.isEmpty()) {
+                rows = rows.put(entry.getKey(), row);
+                entries += row.size();
+            }
+        }
+        return new PersistentDoubleKeyMap<>(rows, entries);
+    }
+
+    /**
+     * @return 放入后的新版本，值未变化时返回当前对象
+     */
+    public PersistentDoubleKeyMap<K1, K2, V> put(K1 k1, K2 k2, V v) {
+        final Hamt<K2, V> row = rows.get(k1);
+        final Hamt<K2, V> oldRow = row == null ? Hamt.empty() : row;
+        final Hamt<K2, V> newRow = oldRow.put(k2, v);
+        if (newRow == oldRow) {
+            return this;
+        }
+        return new PersistentDoubleKeyMap<>(rows.put(k1, newRow), entries + newRow.size() - oldRow.size());
+    }
+
+    /**
+     * @return 放入主键下所有键值对后的新版本
+     */
+    public PersistentDoubleKeyMap<K1, K2, V> put(K1 k1, Map<K2, V> subMap) {
+        final Hamt<K2, V> row = rows.get(k1);
+        final Hamt<K2, V> oldRow = row == null ? Hamt.empty() : row;
+        Hamt<K2, V> newRow = oldRow;
+        for (Map.Entry<K2, V> entry : subMap.entrySet()) {
+            newRow = newRow.put(entry.getKey(), entry.getValue());
+        }
+        if (newRow == oldRow || newRow.isEmpty()) {
+            return this;
+        }
+        return new PersistentDoubleKeyMap<>(rows.put(k1, newRow), entries + newRow.size() - oldRow.size());
+    }
+
+    /**
+     * @return 删除后的新版本，不存在时返回当前对象
+     */
+    public PersistentDoubleKeyMap<K1, K2, V> remove(K1 k1, K2 k2) {
+        final Hamt<K2, V> row = rows.get(k1);
+        if (row == null) {
+            return this;
+        }
+        final Hamt<K2, V> newRow = row.remove(k2);
+        if (newRow == row) {
+            return this;
+        }
+        return new PersistentDoubleKeyMap<>(newRow.isEmpty() ? rows.remove(k1) : rows.put(k1, newRow), entries - 1);
+    }
+
+    /**
+     * @return 删除主键下所有键值对后的新版本，不存在时返回当前对象
+     */
+    public PersistentDoubleKeyMap<K1, K2, V> remove(K1 k1) {
+        final Hamt<K2, V> row = rows.get(k1);
+        if (row == null) {
+            return this;
+        }
+        return new PersistentDoubleKeyMap<>(rows.remove(k1), entries - row.size());
+    }
+
+    public V get(K1 k1, K2 k2) {
+        final Hamt<K2, V> row = rows.get(k1);
+        return row == null ? null : row.get(k2);
+    }
+
+    /**
+     * @return 主键对应的副键Map只读视图，主键不存在时返回null
+     */
+    public Map<K2, V> get(K1 k1) {
+        final Hamt<K2, V> row = rows.get(k1);
+        return row == null ? null : new HamtMap<>(row);
+    }
+
+    public Boolean containsKey(K1 k1) {
+        return rows.containsKey(k1);
+    }
+
+    public Boolean containsKey(K1 k1, K2 k2) {
+        final Hamt<K2, V> row = rows.get(k1);
+        return row != null && row.containsKey(k2);
+    }
+
+    public Boolean containsSubKey(K2 k2) {
+        for (Map.Entry<K1, Hamt<K2, V>> entry : rows) {
+            if (entry.getValue().containsKey(k2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Boolean containsValue(V v) {
+        for (Map.Entry<K1, Hamt<K2, V>> entry : rows) {
+            for (Map.Entry<K2, V> subEntry : entry.getValue()) {
+                if (Objects.equals(subEntry.getValue(), v)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 主键个数
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * @return 键值对个数
+     */
+    public int entryCount() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries == 0;
+    }
+
+    public Map<K1, Set<K2>> keys() {
+        final Map<K1, Set<K2>> keys = new HashMap<>();
+        rows.forEach((k1, row) -> keys.put(k1, new HamtMap<>(row).keySet()));
+        return keys;
+    }
+
+    /**
+     * @return 主键到副键Map的只读视图
+     */
+    public Map<K1, Map<K2, V>> toMap() {
+        return new RowsMap<>(rows);
+    }
+
+    /**
+     * @return 包含相同键值对的可变DoubleKeyMap
+     */
+    public DoubleKeyMap<K1, K2, V> toDoubleKeyMap() {
+        final DoubleKeyMap<K1, K2, V> map = new DoubleKeyMap<>();
+        forEach((TriConsumer<K1, K2, V>) map::put);
+        return map;
+    }
+
+    public List<V> getListOfAll() {
+        final List<V> list = new ArrayList<>(entries);
+        forEach((k1, k2, v) -> list.add(v));
+        return Collections.unmodifiableList(list);
+    }
+
+    public List<V> getListOfSubKey(K1 k1) {
+        final Hamt<K2, V> row = rows.get(k1);
+        final List<V> list = new ArrayList<>(row == null ? 0 : row.size());
+        if (row != null) {
+            row.forEach((k2, v) -> list.add(v));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public void forEach(TriConsumer<K1, K2, V> consumer) {
+        rows.forEach((k1, row) -> row.forEach((k2, v) -> consumer.accept(k1, k2, v)));
+    }
+
+    public void forEach(BiConsumer<K1, Map<K2, V>> consumer) {
+        rows.forEach((k1, row) -> consumer.accept(k1, new HamtMap<>(row)));
+    }
+
+    @Override
+    public Iterator<Map.Entry<K1, Map<K2, V>>> iterator() {
+        return toMap().entrySet().iterator();
+    }
+
+    public Stream<Map.Entry<K1, Map<K2, V>>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K1, Map<K2, V>>> spliterator() {
+        return Spliterators.spliterator(iterator(), rows.size(), Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    @Override
+    public boolean equals(Object thatObj) {
+        if (thatObj == this) {
+            return true;
+        }
+        if (!(thatObj instanceof PersistentDoubleKeyMap)) {
+            return false;
+        }
+        final PersistentDoubleKeyMap<?, ?, ?> that = (PersistentDoubleKeyMap<?, ?, ?>) thatObj;
+        return entries == that.entries && toMap().equals(that.toMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return toMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy<>(this);
+    }
+
+    /**
+     * 按键值对序列化，反序列化时重新构建
+     */
+    private static final class SerializationProxy<K1, K2, V> implements Serializable {
+        private static final long serialVersionUID = -7520493812476051396L;
+
+        private final Object[] triples;
+
+        private SerializationProxy(PersistentDoubleKeyMap<K1, K2, V> map) {
+            triples = new Object[map.entries * 3];
+            final int[] i = {0};
+            map.forEach((k1, k2, v) -> {
+                triples[i[0]++] = k1;
+                triples[i[0]++] = k2;
+                triples[i[0]++] = v;
+            });
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            PersistentDoubleKeyMap<K1, K2, V> map = empty();
+            for (int i = 0; i < triples.length; i += 3) {
+                map = map.put((K1) triples[i], (K2) triples[i + 1], (V) triples[i + 2]);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * {@link Hamt}的只读Map视图
+     */
+    private static class HamtMap<K, V> extends AbstractMap<K, V> {
+        final Hamt<K, V> hamt;
+
+        private HamtMap(Hamt<K, V> hamt) {
+            this.hamt = hamt;
+        }
+
+        @Override
+        public V get(Object key) {
+            return hamt.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return hamt.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return hamt.size();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return hamt.iterator();
+                }
+
+                @Override
+                public int size() {
+                    return hamt.size();
+                }
+            };
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            hamt.forEach(action);
+        }
+    }
+
+    /**
+     * 主键到副键Map的只读视图
+     */
+    private static final class RowsMap<K1, K2, V> extends AbstractMap<K1, Map<K2, V>> {
+        private final Hamt<K1, Hamt<K2, V>> rows;
+
+        private RowsMap(Hamt<K1, Hamt<K2, V>> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Map<K2, V> get(Object key) {
+            final Hamt<K2, V> row = rows.get(key);
+            return row == null ? null : new HamtMap<>(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return rows.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+
+        @Override
+        public Set<Entry<K1, Map<K2, V>>> entrySet() {
+            return new AbstractSet<Entry<K1, Map<K2, V>>>() {
+                @Override
+                public Iterator<Entry<K1, Map<K2, V>>> iterator() {
+                    final Iterator<Entry<K1, Hamt<K2, V>>> iterator = rows.iterator();
+                    return new Iterator<Entry<K1, Map<K2, V>>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K1, Map<K2, V>> next() {
+                            final Entry<K1, Hamt<K2, V>> entry = iterator.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), new HamtMap<>(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return rows.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>可以发布新版本的双键Map集合</p>
+ * <p>内部持有一个{@link PersistentDoubleKeyMap}的当前版本。{@link #snapshot()}为O(1)，直接返回当前版本，
+ * 读者可以在不加锁、不复制的情况下任意遍历该版本；写操作在新版本上进行(写时复制，O(log n))，
+ * 再用CAS原子地替换当前版本，读者持有的旧版本不受影响</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+public class SnapshotDoubleKeyMap<K1, K2, V> {
+
+    private final AtomicReference<PersistentDoubleKeyMap<K1, K2, V>> current;
+
+    public SnapshotDoubleKeyMap() {
+        this(PersistentDoubleKeyMap.empty());
+    }
+
+    public SnapshotDoubleKeyMap(PersistentDoubleKeyMap<K1, K2, V> initial) {
+        current = new AtomicReference<>(initial);
+    }
+
+    /**
+     * @return 当前版本
+     */
+    public PersistentDoubleKeyMap<K1, K2, V> snapshot() {
+        return current.get();
+    }
+
+    /**
+     * 直接发布一个新版本，例如定时刷新时整体替换
+     *
+     * @param next 新版本
+     */
+    public void publish(PersistentDoubleKeyMap<K1, K2, V> next) {
+        current.set(next);
+    }
+
+    /**
+     * 基于当前版本计算并原子地发布新版本，有并发写入时会重新计算，函数不能有副作用
+     *
+     * @param function 由当前版本计算新版本的函数
+     * @return 发布的新版本
+     */
+    public PersistentDoubleKeyMap<K1, K2, V> update(UnaryOperator<PersistentDoubleKeyMap<K1, K2, V>> function) {
+        return current.updateAndGet(function);
+    }
+
+    public PersistentDoubleKeyMap<K1, K2, V> put(K1 k1, K2 k2, V v) {
+        return update(map -> map.put(k1, k2, v));
+    }
+
+    public PersistentDoubleKeyMap<K1, K2, V> put(K1 k1, Map<K2, V> subMap) {
+        return update(map -> map.put(k1, subMap));
+    }
+
+    public PersistentDoubleKeyMap<K1, K2, V> remove(K1 k1, K2 k2) {
+        return update(map -> map.remove(k1, k2));
+    }
+
+    public PersistentDoubleKeyMap<K1, K2, V> remove(K1 k1) {
+        return update(map -> map.remove(k1));
+    }
+
+    public V get(K1 k1, K2 k2) {
+        return current.get().get(k1, k2);
+    }
+
+    public Map<K2, V> get(K1 k1) {
+        return current.get().get(k1);
+    }
+}
@@ -0,0 +1,131 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>按比较器排序、允许重复元素的集合，用于增量维护排好序的值</p>
+ * <p>插入和删除为O(log n)；排好序的List在第一次读取时生成，直到下一次修改之前都返回同一个只读List</p>
+ *
+ * @param <V> 元素
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+class SortedBag<V> {
+
+    private final TreeMap<V, Object> tree;
+    private int size;
+    private List<V> snapshot;
+
+    SortedBag(Comparator<? super V> comparator) {
+        this.tree = new TreeMap<>(comparator);
+    }
+
+    void add(V v) {
+        final Object existing = tree.get(v);
+        if (existing == null) {
+            tree.put(v, v);
+        } else if (existing instanceof Ties) {
+            ((Ties) existing).add(v);
+        } else {
+            final Ties ties = new Ties();
+            ties.add(existing);
+            ties.add(v);
+            tree.put(v, ties);
+        }
+        size++;
+        snapshot = null;
+    }
+
+    boolean remove(V v) {
+        final Object existing = tree.get(v);
+        if (existing == null) {
+            return false;
+        }
+        if (existing instanceof Ties) {
+            final Ties ties = (Ties) existing;
+            if (!ties.removeValue(v)) {
+                return false;
+            }
+            // TreeMap的键如果是被删除的元素，换成仍然存在的元素，避免继续引用它
+            final V key = tree.ceilingKey(v);
+            if (ties.size() == 1 || key == v) {
+                tree.remove(v);
+                tree.put((V) ties.get(0), ties.size() == 1 ? ties.get(0) : ties);
+            }
+        } else {
+            if (existing != v && !existing.equals(v)) {
+                return false;
+            }
+            tree.remove(v);
+        }
+        size--;
+        snapshot = null;
+        return true;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        tree.clear();
+        size = 0;
+        snapshot = null;
+    }
+
+    /**
+     * @return 排好序的只读List，修改之前重复调用返回同一个对象
+     */
+    List<V> toList() {
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(head(size));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return 排在最前面的k个元素
+     */
+    List<V> head(int k) {
+        final List<V> list = new ArrayList<>(Math.min(k, size));
+        for (Map.Entry<V, Object> entry : tree.entrySet()) {
+            if (list.size() >= k) {
+                break;
+            }
+            final Object value = entry.getValue();
+            if (value instanceof Ties) {
+                for (Object v : (Ties) value) {
+                    if (list.size() >= k) {
+                        break;
+                    }
+                    list.add((V) v);
+                }
+            } else {
+                list.add((V) value);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 比较结果相等的多个元素，按插入顺序保存
+     */
+    private static final class Ties extends ArrayList<Object> {
+        private static final long serialVersionUID = -2081620312871707562L;
+
+        private boolean removeValue(Object v) {
+            for (int i = 0; i < size(); i++) {
+                if (get(i) == v) {
+                    remove(i);
+                    return true;
+                }
+            }
+            return remove(v);
+        }
+    }
+}
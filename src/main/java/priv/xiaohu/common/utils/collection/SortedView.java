@@ -0,0 +1,93 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DoubleKeyMap}中所有值或每个主键下的值按比较器排序的视图，随集合的修改增量维护
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+class SortedView<K1, K2, V> implements MutationListener<K1, K2, V> {
+
+    private final Comparator<V> comparator;
+    /**
+     * 所有值，按主键分组时为null
+     */
+    private final SortedBag<V> all;
+    /**
+     * 每个主键下的值，不分组时为null
+     */
+    private final Map<K1, SortedBag<V>> byPrimaryKey;
+
+    SortedView(DoubleKeyMap<K1, K2, V> map, Comparator<V> comparator, boolean perPrimaryKey) {
+        this.comparator = comparator;
+        this.all = perPrimaryKey ? null : new SortedBag<>(comparator);
+        this.byPrimaryKey = perPrimaryKey ? new HashMap<>() : null;
+        map.forEach((k1, k2, v) -> add(k1, v));
+    }
+
+    List<V> toList() {
+        return all.toList();
+    }
+
+    List<V> head(int k) {
+        return Collections.unmodifiableList(all.head(k));
+    }
+
+    List<V> toList(K1 k1) {
+        final SortedBag<V> bag = byPrimaryKey.get(k1);
+        return bag == null ? Collections.emptyList() : bag.toList();
+    }
+
+    List<V> head(K1 k1, int k) {
+        final SortedBag<V> bag = byPrimaryKey.get(k1);
+        return bag == null ? Collections.emptyList() : Collections.unmodifiableList(bag.head(k));
+    }
+
+    private void add(K1 k1, V v) {
+        if (v == null) {
+            throw new IllegalArgumentException("排序视图不支持null值");
+        }
+        if (all != null) {
+            all.add(v);
+        } else {
+            byPrimaryKey.computeIfAbsent(k1, k -> new SortedBag<>(comparator)).add(v);
+        }
+    }
+
+    @Override
+    public void put(K1 k1, K2 k2, boolean existed, V old, V v) {
+        if (existed) {
+            remove(k1, k2, old);
+        }
+        add(k1, v);
+    }
+
+    @Override
+    public void remove(K1 k1, K2 k2, V v) {
+        if (all != null) {
+            all.remove(v);
+            return;
+        }
+        final SortedBag<V> bag = byPrimaryKey.get(k1);
+        if (bag != null && bag.remove(v) && bag.isEmpty()) {
+            byPrimaryKey.remove(k1);
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (all != null) {
+            all.clear();
+        } else {
+            byPrimaryKey.clear();
+        }
+    }
+}
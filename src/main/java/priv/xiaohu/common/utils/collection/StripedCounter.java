@@ -0,0 +1,194 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * <p>与{@link java.util.concurrent.atomic.LongAdder}相同的分段计数器</p>
+ * <p>没有竞争时只对base做CAS；第一次CAS失败后创建两段，之后只在线程对同一段的CAS再次失败时才加倍，
+ * 分段个数最多为不小于CPU个数的2的幂。分段按需创建，每段之后填充到64字节以避免伪共享。
+ * 线程按自己的探针选择分段，CAS失败时重新计算探针，两个频繁累加的线程不会一直竞争同一段</p>
+ * <p>与LongAdder不同，{@link #sumThenReset()}对每一段使用getAndSet，
+ * 与之并发的累加要么计入本次结果，要么留到下一次，不会丢失</p>
+ *
+ * @author zxh
+ */
+final class StripedCounter {
+    private static final int MAX_STRIPES = Math.min(
+            Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors() * 2 - 1, 1)), 1 << 8);
+
+    private static final AtomicLongFieldUpdater<StripedCounter> BASE =
+            AtomicLongFieldUpdater.newUpdater(StripedCounter.class, "base");
+    private static final AtomicIntegerFieldUpdater<StripedCounter> BUSY =
+            AtomicIntegerFieldUpdater.newUpdater(StripedCounter.class, "busy");
+
+    /**
+     * 每个线程的探针，初始值由线程id决定，CAS失败时按xorshift更新
+     */
+    private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(() -> {
+        long h = Thread.currentThread().getId();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return new int[]{(int) h | 1};
+    });
+
+    private volatile long base;
+    /**
+     * 分段数组，长度为2的幂，元素在第一次使用时创建
+     */
+    private volatile Cell[] cells;
+    /**
+     * 创建或扩大分段数组时的自旋锁
+     */
+    private volatile int busy;
+
+    void add(long delta) {
+        final Cell[] cs = cells;
+        if (cs == null) {
+            final long b = base;
+            if (BASE.compareAndSet(this, b, b + delta)) {
+                return;
+            }
+        } else {
+            final Cell c = cs[PROBE.get()[0] & (cs.length - 1)];
+            if (c != null) {
+                final long v = c.get();
+                if (c.compareAndSet(v, v + delta)) {
+                    return;
+                }
+            }
+        }
+        if (MAX_STRIPES == 1) {
+            BASE.getAndAdd(this, delta);
+            return;
+        }
+        addContended(delta);
+    }
+
+    /**
+     * 与Striped64.longAccumulate相同：创建缺少的分段，同一段连续冲突时加倍分段数组，否则重新计算探针
+     */
+    private void addContended(long delta) {
+        final int[] probe = PROBE.get();
+        boolean collided = false;
+        for (;;) {
+            final Cell[] cs = cells;
+            if (cs == null) {
+                if (lock()) {
+                    try {
+                        if (cells == null) {
+                            final Cell[] created = new Cell[2];
+                            created[probe[0] & 1] = new Cell(delta);
+                            cells = created;
+                            return;
+                        }
+                    } finally {
+                        busy = 0;
+                    }
+                    continue;
+                }
+                // 其他线程正在创建分段数组，先尝试累加到base
+                final long b = base;
+                if (BASE.compareAndSet(this, b, b + delta)) {
+                    return;
+                }
+                continue;
+            }
+            final int index = probe[0] & (cs.length - 1);
+            final Cell c = cs[index];
+            if (c == null) {
+                if (lock()) {
+                    try {
+                        if (cells == cs && cs[index] == null) {
+                            cs[index] = new Cell(delta);
+                            return;
+                        }
+                    } finally {
+                        busy = 0;
+                    }
+                    continue;
+                }
+                collided = false;
+            } else {
+                final long v = c.get();
+                if (c.compareAndSet(v, v + delta)) {
+                    return;
+                }
+                if (cs.length >= MAX_STRIPES || cells != cs) {
+                    collided = false;
+                } else if (!collided) {
+                    collided = true;
+                } else if (lock()) {
+                    try {
+                        if (cells == cs) {
+                            // 已有的分段原样保留，扩大期间的累加不会丢失
+                            cells = Arrays.copyOf(cs, cs.length << 1);
+                        }
+                    } finally {
+                        busy = 0;
+                    }
+                    collided = false;
+                    continue;
+                }
+            }
+            int h = probe[0];
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            probe[0] = h;
+        }
+    }
+
+    private boolean lock() {
+        return busy == 0 && BUSY.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * 累加期间的结果不是某一时刻的精确值，但每次累加都会被计入
+     */
+    long sum() {
+        long sum = base;
+        final Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) {
+                    sum += c.get();
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 返回当前的和并清零
+     */
+    long sumThenReset() {
+        long sum = BASE.getAndSet(this, 0L);
+        final Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                if (c != null) {
+                    sum += c.getAndSet(0L);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 一段计数，值之后填充56字节，与下一段的值相隔超过64字节
+     */
+    @SuppressWarnings("unused")
+    private static final class Cell extends AtomicLong {
+        private static final long serialVersionUID = 5340418398117357063L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        Cell(long value) {
+            super(value);
+        }
+    }
+}
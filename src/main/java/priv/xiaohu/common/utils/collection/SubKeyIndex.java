@@ -0,0 +1,71 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 副键到主键集合的反向索引，随{@link DoubleKeyMap}的修改增量维护
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+class SubKeyIndex<K1, K2, V> implements MutationListener<K1, K2, V>, Serializable {
+    private static final long serialVersionUID = 5213385470153226476L;
+
+    private final Map<K2, Set<K1>> index;
+    private final boolean ordered;
+
+    SubKeyIndex(DoubleKeyMap<K1, K2, V> map) {
+        this.ordered = map.isOrdered();
+        this.index = ordered ? new LinkedHashMap<>() : new HashMap<>();
+        map.forEach((k1, k2, v) -> add(k1, k2));
+    }
+
+    /**
+     * @return 副键对应的主键集合的只读视图，副键不存在时返回空集合
+     */
+    Set<K1> get(K2 k2) {
+        final Set<K1> k1s = index.get(k2);
+        return k1s == null ? Collections.emptySet() : Collections.unmodifiableSet(k1s);
+    }
+
+    boolean contains(K2 k2) {
+        return index.containsKey(k2);
+    }
+
+    Map<K2, Set<K1>> toMap() {
+        return index;
+    }
+
+    private void add(K1 k1, K2 k2) {
+        index.computeIfAbsent(k2, k -> ordered ? new LinkedHashSet<>() : new HashSet<>()).add(k1);
+    }
+
+    @Override
+    public void put(K1 k1, K2 k2, boolean existed, V old, V v) {
+        if (!existed) {
+            add(k1, k2);
+        }
+    }
+
+    @Override
+    public void remove(K1 k1, K2 k2, V v) {
+        final Set<K1> k1s = index.get(k2);
+        if (k1s != null && k1s.remove(k1) && k1s.isEmpty()) {
+            index.remove(k2);
+        }
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+    }
+}
@@ -0,0 +1,126 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link DoubleKeyMap}的只读转置视图：副键 → 主键 → 值，由副键索引支持，不复制数据
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+class TransposedView<K1, K2, V> extends AbstractMap<K2, Map<K1, V>> {
+
+    private final DoubleKeyMap<K1, K2, V> map;
+    private final SubKeyIndex<K1, K2, V> index;
+
+    TransposedView(DoubleKeyMap<K1, K2, V> map, SubKeyIndex<K1, K2, V> index) {
+        this.map = map;
+        this.index = index;
+    }
+
+    @Override
+    public Map<K1, V> get(Object k2) {
+        return containsKey(k2) ? new Column((K2) k2) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object k2) {
+        try {
+            return index.contains((K2) k2);
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int size() {
+        return index.toMap().size();
+    }
+
+    @Override
+    public Set<Entry<K2, Map<K1, V>>> entrySet() {
+        return new AbstractSet<Entry<K2, Map<K1, V>>>() {
+            @Override
+            public Iterator<Entry<K2, Map<K1, V>>> iterator() {
+                final Iterator<K2> k2s = index.toMap().keySet().iterator();
+                return new Iterator<Entry<K2, Map<K1, V>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return k2s.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K2, Map<K1, V>> next() {
+                        final K2 k2 = k2s.next();
+                        return new SimpleImmutableEntry<>(k2, new Column(k2));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return TransposedView.this.size();
+            }
+        };
+    }
+
+    /**
+     * 一个副键对应的所有主键和值
+     */
+    private final class Column extends AbstractMap<K1, V> {
+        private final K2 k2;
+
+        private Column(K2 k2) {
+            this.k2 = k2;
+        }
+
+        @Override
+        public V get(Object k1) {
+            return containsKey(k1) ? map.get((K1) k1, k2) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object k1) {
+            return index.get(k2).contains(k1);
+        }
+
+        @Override
+        public int size() {
+            return index.get(k2).size();
+        }
+
+        @Override
+        public Set<Entry<K1, V>> entrySet() {
+            return new AbstractSet<Entry<K1, V>>() {
+                @Override
+                public Iterator<Entry<K1, V>> iterator() {
+                    final Iterator<K1> k1s = index.get(k2).iterator();
+                    return new Iterator<Entry<K1, V>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return k1s.hasNext();
+                        }
+
+                        @Override
+                        public Entry<K1, V> next() {
+                            final K1 k1 = k1s.next();
+                            return new SimpleImmutableEntry<>(k1, map.get(k1, k2));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return Column.this.size();
+                }
+            };
+        }
+    }
+}
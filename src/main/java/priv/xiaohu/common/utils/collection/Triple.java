@@ -0,0 +1,60 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * 不可变的(主键, 副键, 值)三元组
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+public final class Triple<K1, K2, V> implements Serializable {
+    private static final long serialVersionUID = -4838203914733925160L;
+
+    private final K1 key1;
+    private final K2 key2;
+    private final V value;
+
+    public Triple(K1 key1, K2 key2, V value) {
+        this.key1 = key1;
+        this.key2 = key2;
+        this.value = value;
+    }
+
+    public K1 getKey1() {
+        return key1;
+    }
+
+    public K2 getKey2() {
+        return key2;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Triple)) {
+            return false;
+        }
+        final Triple<?, ?, ?> that = (Triple<?, ?, ?>) o;
+        return Objects.equals(key1, that.key1) && Objects.equals(key2, that.key2) && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key1, key2, value);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + key1 + ", " + key2 + ", " + value + ")";
+    }
+}
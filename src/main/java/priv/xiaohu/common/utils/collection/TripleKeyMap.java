@@ -0,0 +1,166 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>以三个键为组合键的Map</p>
+ * <p>三个键直接存放在{@link CompositeKeyTable}的数组中，get、put、remove、containsKey不创建组合键对象。
+ * 除了完整的组合键，还可以按前缀(k1)或(k1, k2)查询、统计、遍历和删除，只访问该前缀下的键值对</p>
+ * <p>与{@link DoubleKeyMap}不同，{@link #size()}返回的是键值对个数</p>
+ * <pre>
+ * TripleKeyMap&lt;String, Integer, String, Long&gt; map = new TripleKeyMap&lt;&gt;();
+ * map.put("shop", 2019, "05", 100L);
+ * map.forEach("shop", (year, month, amount) -&gt; ...);
+ * map.remove("shop", 2019);
+ * </pre>
+ *
+ * @param <K1> 第一个键
+ * @param <K2> 第二个键
+ * @param <K3> 第三个键
+ * @param <V>  值
+ * @author zxh
+ */
+@SuppressWarnings("unchecked")
+public class TripleKeyMap<K1, K2, K3, V> implements Serializable {
+    private static final long serialVersionUID = -5106458262017357309L;
+
+    private final CompositeKeyTable<V> table;
+
+    public TripleKeyMap() {
+        this(0);
+    }
+
+    /**
+     * @param size 预计的键值对个数
+     */
+    public TripleKeyMap(int size) {
+        table = new CompositeKeyTable<>(3, size);
+    }
+
+    public V get(K1 k1, K2 k2, K3 k3) {
+        final int e = table.find(k1, k2, k3, null, null);
+        return e < 0 ? null : table.value(e);
+    }
+
+    public V getOrDefault(K1 k1, K2 k2, K3 k3, V defaultValue) {
+        final int e = table.find(k1, k2, k3, null, null);
+        return e < 0 ? defaultValue : table.value(e);
+    }
+
+    /**
+     * @return 旧值，不存在时为null
+     */
+    public V put(K1 k1, K2 k2, K3 k3, V v) {
+        return table.put(k1, k2, k3, null, null, v, false);
+    }
+
+    /**
+     * @return 已存在的值，不存在或为null时放入v并返回null
+     */
+    public V putIfAbsent(K1 k1, K2 k2, K3 k3, V v) {
+        return table.put(k1, k2, k3, null, null, v, true);
+    }
+
+    /**
+     * @return 被删除的值，不存在时为null
+     */
+    public V remove(K1 k1, K2 k2, K3 k3) {
+        return table.remove(k1, k2, k3, null, null);
+    }
+
+    /**
+     * 删除第一个键为k1的所有键值对
+     *
+     * @return 删除的个数
+     */
+    public int remove(K1 k1) {
+        return table.removePrefix(1, k1, null, null, null, null);
+    }
+
+    /**
+     * 删除前两个键为(k1, k2)的所有键值对
+     *
+     * @return 删除的个数
+     */
+    public int remove(K1 k1, K2 k2) {
+        return table.removePrefix(2, k1, k2, null, null, null);
+    }
+
+    public boolean containsKey(K1 k1, K2 k2, K3 k3) {
+        return table.find(k1, k2, k3, null, null) >= 0;
+    }
+
+    public boolean containsKey(K1 k1) {
+        return table.first(1, k1, null, null, null, null) >= 0;
+    }
+
+    public boolean containsKey(K1 k1, K2 k2) {
+        return table.first(2, k1, k2, null, null, null) >= 0;
+    }
+
+    /**
+     * @return 第一个键为k1的键值对个数
+     */
+    public int count(K1 k1) {
+        return table.count(1, k1, null, null, null, null);
+    }
+
+    /**
+     * @return 前两个键为(k1, k2)的键值对个数
+     */
+    public int count(K1 k1, K2 k2) {
+        return table.count(2, k1, k2, null, null, null);
+    }
+
+    /**
+     * @return 键值对个数
+     */
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isEmpty() {
+        return table.size() == 0;
+    }
+
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * 遍历所有键值对，遍历时不能修改
+     */
+    public void forEach(QuadConsumer<? super K1, ? super K2, ? super K3, ? super V> consumer) {
+        for (int e = 0, size = table.size(); e < size; e++) {
+            consumer.accept((K1) table.key(e, 0), (K2) table.key(e, 1), (K3) table.key(e, 2), table.value(e));
+        }
+    }
+
+    /**
+     * 遍历第一个键为k1的键值对，遍历时不能修改
+     */
+    public void forEach(K1 k1, TriConsumer<? super K2, ? super K3, ? super V> consumer) {
+        for (int e = table.first(1, k1, null, null, null, null); e >= 0; e = table.next(1, e)) {
+            consumer.accept((K2) table.key(e, 1), (K3) table.key(e, 2), table.value(e));
+        }
+    }
+
+    /**
+     * 遍历前两个键为(k1, k2)的键值对，遍历时不能修改
+     */
+    public void forEach(K1 k1, K2 k2, BiConsumer<? super K3, ? super V> consumer) {
+        for (int e = table.first(2, k1, k2, null, null, null); e >= 0; e = table.next(2, e)) {
+            consumer.accept((K3) table.key(e, 2), table.value(e));
+        }
+    }
+
+    /**
+     * @return 第一个键为k1的键值对组成的DoubleKeyMap
+     */
+    public DoubleKeyMap<K2, K3, V> get(K1 k1) {
+        final DoubleKeyMap<K2, K3, V> result = new DoubleKeyMap<>();
+        forEach(k1, result::put);
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package priv.xiaohu.common.utils.collection;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <p>按(主键, 副键, 值)三元组遍历{@link DoubleKeyMap}的Spliterator</p>
+ * <p>创建时记录每个主键之前的三元组个数，按三元组个数在主键之间二分切分，切分后的大小仍然是精确的(SIZED | SUBSIZED)。
+ * 遍历过程中集合不能被修改</p>
+ *
+ * @param <K1> 主键
+ * @param <K2> 副键
+ * @param <V>  值
+ * @author zxh
+ */
+class TripleSpliterator<K1, K2, V> implements Spliterator<Triple<K1, K2, V>> {
+
+    private final Map.Entry<K1, Map<K2, V>>[] rows;
+    /**
+     * offsets[i]为第i个主键之前的三元组个数，长度为rows.length + 1
+     */
+    private final long[] offsets;
+    private final int characteristics;
+    private int index;
+    private final int fence;
+    private K1 currentKey;
+    private Iterator<Map.Entry<K2, V>> current;
+    private long currentRemaining;
+
+    TripleSpliterator(Map.Entry<K1, Map<K2, V>>[] rows, boolean ordered, boolean sized) {
+        this(rows, offsets(rows), 0, rows.length, null, null, 0,
+                NONNULL | DISTINCT | (ordered ? ORDERED : 0) | (sized ? SIZED | SUBSIZED : 0));
+    }
+
+    private TripleSpliterator(Map.Entry<K1, Map<K2, V>>[] rows, long[] offsets, int index, int fence, K1 currentKey,
+                              Iterator<Map.Entry<K2, V>> current, long currentRemaining, int characteristics) {
+        this.rows = rows;
+        this.offsets = offsets;
+        this.index = index;
+        this.fence = fence;
+        this.currentKey = currentKey;
+        this.current = current;
+        this.currentRemaining = currentRemaining;
+        this.characteristics = characteristics;
+    }
+
+    /**
+     * @return 每个主键之前的三元组个数的前缀和
+     */
+    static <K1, K2, V> long[] offsets(Map.Entry<K1, Map<K2, V>>[] rows) {
+        final long[] offsets = new long[rows.length + 1];
+        for (int i = 0; i < rows.length; i++) {
+            offsets[i + 1] = offsets[i] + rows[i].getValue().size();
+        }
+        return offsets;
+    }
+
+    /**
+     * 在[from, to)之间找到使两边三元组个数最接近的切分点
+     *
+     * @return 切分点，范围为(from, to)
+     */
+    static int split(long[] offsets, int from, int to) {
+        final long middle = offsets[from] + (offsets[to] - offsets[from]) / 2;
+        int mid = Arrays.binarySearch(offsets, from + 1, to, middle);
+        if (mid < 0) {
+            mid = -mid - 1;
+        }
+        return Math.max(from + 1, Math.min(mid, to - 1));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Triple<K1, K2, V>> action) {
+        while (current == null || !current.hasNext()) {
+            if (index >= fence) {
+                current = null;
+                return false;
+            }
+            final Map.Entry<K1, Map<K2, V>> row = rows[index++];
+            currentKey = row.getKey();
+            current = row.getValue().entrySet().iterator();
+            currentRemaining = row.getValue().size();
+        }
+        final Map.Entry<K2, V> entry = current.next();
+        currentRemaining--;
+        action.accept(new Triple<>(currentKey, entry.getKey(), entry.getValue()));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Triple<K1, K2, V>> action) {
+        if (current != null) {
+            final K1 k1 = currentKey;
+            current.forEachRemaining(entry -> action.accept(new Triple<>(k1, entry.getKey(), entry.getValue())));
+            current = null;
+            currentRemaining = 0;
+        }
+        for (; index < fence; index++) {
+            final K1 k1 = rows[index].getKey();
+            rows[index].getValue().forEach((k2, v) -> action.accept(new Triple<>(k1, k2, v)));
+        }
+    }
+
+    /**
+     * 只切分尚未开始遍历的主键，正在遍历的主键随前半部分一起返回
+     */
+    @Override
+    public Spliterator<Triple<K1, K2, V>> trySplit() {
+        if (fence - index < 2) {
+            return null;
+        }
+        final int mid = split(offsets, index, fence);
+        final TripleSpliterator<K1, K2, V> prefix = new TripleSpliterator<>(rows, offsets, index, mid,
+                currentKey, current, currentRemaining, characteristics);
+        index = mid;
+        currentKey = null;
+        current = null;
+        currentRemaining = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return currentRemaining + offsets[fence] - offsets[index];
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+}
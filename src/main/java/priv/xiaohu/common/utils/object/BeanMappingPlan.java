@@ -0,0 +1,220 @@
+package priv.xiaohu.common.utils.object;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link CopyUtils#convertBean(Object, Object)}的映射计划：(源类, 目标类)之间每个字段使用的getter和setter</p>
+ * <p>按原来的三种方式依次查找(PropertyDescriptor；get/set + 首字母大写的字段名；get/set + 字段名，
+ * 包装类型Long和Integer的字段可以使用基本类型的setter)，查找只在第一次转换这对类时进行一次，
+ * 结果保存为{@link MethodHandle}。之后每次转换直接调用，某种方式调用失败(例如null不能传给基本类型)时
+ * 与原来一样尝试下一种，全部失败时记录错误日志</p>
+ * <p>计划按源类缓存在{@link ClassValue}中，每个计划持有源类和目标类的MethodHandle，
+ * 因此源类可以被回收之前，转换过的目标类及其类加载器也不会被回收</p>
+ *
+ * @author zxh
+ */
+final class BeanMappingPlan {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CopyUtils.class);
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static final ClassValue<ConcurrentHashMap<Class<?>, BeanMappingPlan>> PLANS = new ClassValue<ConcurrentHashMap<Class<?>, BeanMappingPlan>>() {
+		@Override
+		protected ConcurrentHashMap<Class<?>, BeanMappingPlan> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private final String[] fieldNames;
+	/**
+	 * 每个字段可用的getter和setter，按查找方式的顺序排列，为空表示无法复制
+	 */
+	private final Accessor[][] accessors;
+
+	private BeanMappingPlan(Class<?> source, Class<?> target) {
+		final List<Field> fields = new ArrayList<>();
+		for (Class<?> c = target; c != null && !Object.class.equals(c); c = c.getSuperclass()) {
+			fields.addAll(Arrays.asList(c.getDeclaredFields()));
+		}
+		fieldNames = new String[fields.size()];
+		accessors = new Accessor[fields.size()][];
+		for (int i = 0; i < fields.size(); i++) {
+			final Field field = fields.get(i);
+			final List<Accessor> found = new ArrayList<>(3);
+			addIfPresent(found, byPropertyDescriptor(field, source, target));
+			addIfPresent(found, byName(field, source, target, field.getName().isEmpty() ? null
+					: field.getName().substring(0, 1).toUpperCase() + field.getName().substring(1)));
+			addIfPresent(found, byName(field, source, target, field.getName()));
+			fieldNames[i] = field.getName();
+			accessors[i] = found.toArray(new Accessor[0]);
+		}
+	}
+
+	/**
+	 * @return (源类, 目标类)的映射计划，第一次调用时创建
+	 */
+	static BeanMappingPlan of(Class<?> source, Class<?> target) {
+		final ConcurrentHashMap<Class<?>, BeanMappingPlan> plans = PLANS.get(source);
+		final BeanMappingPlan plan = plans.get(target);
+		return plan != null ? plan : plans.computeIfAbsent(target, t -> new BeanMappingPlan(source, t));
+	}
+
+	<T1, T2> T2 map(T1 orimodel, T2 newObj) {
+		for (int i = 0; i < accessors.length; i++) {
+			if (!copy(accessors[i], orimodel, newObj)) {
+				LOGGER.error("{} ==> {} 复制值 {} 失败!\r\n", orimodel.getClass().getName(), newObj.getClass().getName(), fieldNames[i]);
+			}
+		}
+		return newObj;
+	}
+
+	private static boolean copy(Accessor[] candidates, Object orimodel, Object newObj) {
+		for (Accessor accessor : candidates) {
+			if (accessor.copy(orimodel, newObj)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 第一种方式：源类和目标类都有该字段的PropertyDescriptor
+	 */
+	private static Accessor byPropertyDescriptor(Field field, Class<?> source, Class<?> target) {
+		try {
+			final PropertyDescriptor getpd = new PropertyDescriptor(field.getName(), source);
+			final PropertyDescriptor setpd = new PropertyDescriptor(field.getName(), target);
+			return new Accessor(getpd.getReadMethod(), setpd.getWriteMethod());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 第二、三种方式：源类有"get" + xetter，目标类有参数为字段类型的"set" + xetter，
+	 * 字段类型为Long或Integer时也可以是参数为long或int的setter
+	 */
+	private static Accessor byName(Field field, Class<?> source, Class<?> target, String xetter) {
+		if (xetter == null) {
+			return null;
+		}
+		try {
+			final Method getMethod = source.getMethod("get" + xetter);
+			final String setter = "set" + xetter;
+			Method mySetter = null;
+			try {
+				mySetter = target.getMethod(setter, field.getType());
+			} catch (NoSuchMethodException e) {
+				if (field.getType().equals(Long.class)) {
+					mySetter = target.getMethod(setter, long.class);
+				}
+				if (field.getType().equals(Integer.class)) {
+					mySetter = target.getMethod(setter, int.class);
+				}
+			}
+			return mySetter == null ? null : new Accessor(getMethod, mySetter);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static void addIfPresent(List<Accessor> found, Accessor accessor) {
+		if (accessor != null) {
+			found.add(accessor);
+		}
+	}
+
+	/**
+	 * 统一为(Object)Object的getter和(Object, Object)void的setter，静态方法忽略对象参数，与Method.invoke一致
+	 */
+	private static MethodHandle handle(Method method, MethodType type) throws IllegalAccessException {
+		MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle.asType(type);
+	}
+
+	/**
+	 * <p>批量转换的函数：用factory创建目标对象后按映射计划复制，null转换为null</p>
+	 * <p>记住上一个元素使用的计划，源类和目标类与上一个元素相同时不再查找缓存；
+	 * 记录的是不可变对象，可以在多个线程中同时使用</p>
+	 */
+	static final class Converter<S, T> implements Function<S, T> {
+		private final Supplier<? extends T> factory;
+		private Resolved last;
+
+		Converter(Supplier<? extends T> factory) {
+			if (factory == null) {
+				throw new IllegalArgumentException("目标对象的创建方法不能为null");
+			}
+			this.factory = factory;
+		}
+
+		@Override
+		public T apply(S orimodel) {
+			if (orimodel == null) {
+				return null;
+			}
+			final T newObj = factory.get();
+			Resolved resolved = last;
+			if (resolved == null || resolved.source != orimodel.getClass() || resolved.target != newObj.getClass()) {
+				resolved = new Resolved(orimodel.getClass(), newObj.getClass());
+				last = resolved;
+			}
+			return resolved.plan.map(orimodel, newObj);
+		}
+	}
+
+	private static final class Resolved {
+		private final Class<?> source;
+		private final Class<?> target;
+		private final BeanMappingPlan plan;
+
+		Resolved(Class<?> source, Class<?> target) {
+			this.source = source;
+			this.target = target;
+			this.plan = of(source, target);
+		}
+	}
+
+	private static final class Accessor {
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		Accessor(Method getter, Method setter) throws IllegalAccessException {
+			this.getter = handle(getter, GETTER);
+			this.setter = handle(setter, SETTER);
+		}
+
+		/**
+		 * 与原来的反射调用相同，getter或setter抛出的任何异常都表示这种方式失败
+		 */
+		boolean copy(Object orimodel, Object newObj) {
+			try {
+				setter.invokeExact(newObj, (Object) getter.invokeExact(orimodel));
+				return true;
+			} catch (Throwable e) {
+				return false;
+			}
+		}
+	}
+}
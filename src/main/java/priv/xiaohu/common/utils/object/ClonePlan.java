@@ -0,0 +1,522 @@
+package priv.xiaohu.common.utils.object;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * <p>{@link DeepCopier}对一个类的复制方式，每个类只分析一次，缓存在{@link ClassValue}中</p>
+ * <ul>
+ * <li>不可变的类型(包装类型、String、枚举、Class、BigInteger、BigDecimal、java.time中的类型等)直接返回原对象</li>
+ * <li>基本类型数组整体复制；元素类型为不可变的final类的数组浅复制，其他数组逐个复制元素</li>
+ * <li>Collection和Map创建同一个类的实例并预分配容量：JDK中的类使用容量构造方法，
+ * 有比较器的类(TreeSet、TreeMap、PriorityQueue等)传入原来的比较器，其他类使用无参构造方法；
+ * 无法创建时(例如Collections.unmodifiableList的结果)使用ArrayList、LinkedHashSet、LinkedHashMap等代替，
+ * 并重新包装为不可修改或同步的集合</li>
+ * <li>实现了Cloneable的JDK类(Date、Calendar等)调用公开的clone()方法</li>
+ * <li>其他类通过无参构造方法创建，按字段复制所有非静态、非final的字段；
+ * 没有可以访问的无参构造方法或字段时(例如只有全参构造方法的值对象、JDK 9以上的StringBuilder)与原来一样返回原对象，
+ * 严格模式下抛出IllegalStateException</li>
+ * </ul>
+ *
+ * @author zxh
+ */
+abstract class ClonePlan {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final ClassValue<ClonePlan> PLANS = new ClassValue<ClonePlan>() {
+		@Override
+		protected ClonePlan computeValue(Class<?> type) {
+			return create(type);
+		}
+	};
+
+	private static final Set<Class<?>> IMMUTABLE_CLASSES = new HashSet<>(Arrays.asList(
+			String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+			Float.class, Double.class, Void.class, Object.class, Class.class, BigInteger.class, BigDecimal.class,
+			UUID.class, Locale.class, Pattern.class));
+
+	/**
+	 * int参数只表示初始容量的JDK类，其他类的int参数可能是容量上限(例如ArrayBlockingQueue)
+	 */
+	private static final Set<Class<?>> SIZE_HINT_CLASSES = new HashSet<>(Arrays.asList(
+			ArrayList.class, Vector.class, ArrayDeque.class, HashSet.class, LinkedHashSet.class, HashMap.class,
+			LinkedHashMap.class, Hashtable.class, IdentityHashMap.class, WeakHashMap.class, ConcurrentHashMap.class));
+
+	/**
+	 * 直接返回原对象
+	 */
+	static final ClonePlan IMMUTABLE = new ClonePlan() {
+		@Override
+		boolean isImmutable() {
+			return true;
+		}
+
+		@Override
+		Object copy(Object value, int level, DeepCopier copier) {
+			return value;
+		}
+	};
+
+	static ClonePlan of(Class<?> type) {
+		return PLANS.get(type);
+	}
+
+	/**
+	 * @return 是否直接返回原对象，为true时不需要记录在已复制的对象中
+	 */
+	boolean isImmutable() {
+		return false;
+	}
+
+	/**
+	 * 创建副本，在复制内容之前通过{@link DeepCopier#register(Object, Object)}登记，以便循环引用指向副本；
+	 * 并行复制时同一个对象可能被同时复制，登记返回的不是自己创建的副本时放弃复制，返回已登记的副本
+	 *
+	 * @param level 内容的复制深度，已经减去了这一层
+	 */
+	abstract Object copy(Object value, int level, DeepCopier copier);
+
+	static boolean isImmutable(Class<?> type) {
+		return type.isPrimitive() || IMMUTABLE_CLASSES.contains(type) || Enum.class.isAssignableFrom(type)
+				|| (type.getName().startsWith("java.time.") && Modifier.isFinal(type.getModifiers()))
+				|| type.getName().startsWith("java.util.Collections$Empty")
+				// lambda捕获的变量不能修改
+				|| (type.isSynthetic() && type.getName().contains("$$Lambda"));
+	}
+
+	private static ClonePlan create(Class<?> type) {
+		if (isImmutable(type)) {
+			return IMMUTABLE;
+		}
+		if (type.isArray()) {
+			return type.getComponentType().isPrimitive() ? new PrimitiveArrayPlan() : new ObjectArrayPlan(type.getComponentType());
+		}
+		if (EnumSet.class.isAssignableFrom(type)) {
+			// 元素都是枚举，复制集合本身即可
+			return new ClonePlan() {
+				@Override
+				Object copy(Object value, int level, DeepCopier copier) {
+					return copier.register(value, ((EnumSet<?>) value).clone());
+				}
+			};
+		}
+		if (Map.class.isAssignableFrom(type)) {
+			return new MapPlan(type);
+		}
+		if (Collection.class.isAssignableFrom(type)) {
+			return new CollectionPlan(type);
+		}
+		if (Cloneable.class.isAssignableFrom(type) && type.getName().startsWith("java")) {
+			final MethodHandle clone = cloneMethod(type);
+			if (clone != null) {
+				return new ClonePlan() {
+					@Override
+					Object copy(Object value, int level, DeepCopier copier) {
+						try {
+							return copier.register(value, clone.invokeExact(value));
+						} catch (RuntimeException | Error e) {
+							throw e;
+						} catch (Throwable e) {
+							throw new IllegalStateException("复制" + value.getClass().getName() + "失败", e);
+						}
+					}
+				};
+			}
+		}
+		return BeanPlan.create(type);
+	}
+
+	/**
+	 * @return 公开的clone()方法，不存在或不能访问时返回null
+	 */
+	private static MethodHandle cloneMethod(Class<?> type) {
+		try {
+			return LOOKUP.unreflect(type.getMethod("clone")).asType(MethodType.methodType(Object.class, Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 不能复制的类，默认返回原对象，严格模式下抛出异常
+	 */
+	private static ClonePlan unsupported(Class<?> type, String reason, Throwable cause) {
+		final String message = "无法复制" + type.getName() + "：" + reason;
+		return new ClonePlan() {
+			@Override
+			Object copy(Object value, int level, DeepCopier copier) {
+				if (copier.isStrict()) {
+					throw new IllegalStateException(message, cause);
+				}
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * @return 放入size个元素不需要扩容的HashMap容量
+	 */
+	static int hashCapacity(int size) {
+		return (int) (size / 0.75f) + 1;
+	}
+
+	/**
+	 * 查找创建同类空容器的构造方法，按(容量, 比较器)、(比较器)、(容量)、无参的顺序。
+	 * 容量构造方法只用于int参数是初始容量的JDK类；BlockingQueue的int参数是容量上限，传入原队列的容量上限
+	 *
+	 * @return 参数为原容器、返回空容器的函数，找不到时返回null
+	 */
+	private static Function<Object, Object> factory(Class<?> type, boolean hashed) {
+		final boolean jdk = type.getName().startsWith("java.");
+		final boolean sorted = SortedSet.class.isAssignableFrom(type) || SortedMap.class.isAssignableFrom(type)
+				|| PriorityQueue.class.isAssignableFrom(type) || PriorityBlockingQueue.class.isAssignableFrom(type);
+		if (sorted) {
+			final MethodHandle sizedComparator = jdk ? constructor(type, int.class, Comparator.class) : null;
+			if (sizedComparator != null) {
+				return source -> newInstance(sizedComparator, Math.max(size(source), 1), comparator(source));
+			}
+			final MethodHandle withComparator = constructor(type, Comparator.class);
+			if (withComparator != null) {
+				return source -> newInstance(withComparator, comparator(source));
+			}
+		}
+		if (jdk && BlockingQueue.class.isAssignableFrom(type)) {
+			final MethodHandle bounded = constructor(type, int.class);
+			if (bounded != null) {
+				return source -> newInstance(bounded, boundOf((BlockingQueue<?>) source));
+			}
+		}
+		final MethodHandle sized = SIZE_HINT_CLASSES.contains(type) ? constructor(type, int.class) : null;
+		if (sized != null) {
+			return source -> newInstance(sized, hashed ? hashCapacity(size(source)) : size(source));
+		}
+		final MethodHandle empty = constructor(type);
+		if (empty != null) {
+			return source -> newInstance(empty);
+		}
+		return null;
+	}
+
+	/**
+	 * 不可修改和同步的包装重新包装副本，其他情况返回null
+	 */
+	private static UnaryOperator<Object> wrapper(Class<?> type) {
+		final String name = type.getName();
+		final boolean unmodifiable = name.startsWith("java.util.Collections$Unmodifiable") || name.startsWith("java.util.Collections$Singleton");
+		final boolean synchronize = name.startsWith("java.util.Collections$Synchronized");
+		if (!unmodifiable && !synchronize) {
+			return null;
+		}
+		if (NavigableSet.class.isAssignableFrom(type)) {
+			return unmodifiable ? c -> Collections.unmodifiableNavigableSet((NavigableSet<?>) c) : c -> Collections.synchronizedNavigableSet((NavigableSet<?>) c);
+		}
+		if (SortedSet.class.isAssignableFrom(type)) {
+			return unmodifiable ? c -> Collections.unmodifiableSortedSet((SortedSet<?>) c) : c -> Collections.synchronizedSortedSet((SortedSet<?>) c);
+		}
+		if (Set.class.isAssignableFrom(type)) {
+			return unmodifiable ? c -> Collections.unmodifiableSet((Set<?>) c) : c -> Collections.synchronizedSet((Set<?>) c);
+		}
+		if (List.class.isAssignableFrom(type)) {
+			return unmodifiable ? c -> Collections.unmodifiableList((List<?>) c) : c -> Collections.synchronizedList((List<?>) c);
+		}
+		if (NavigableMap.class.isAssignableFrom(type)) {
+			return unmodifiable ? m -> Collections.unmodifiableNavigableMap((NavigableMap<?, ?>) m) : m -> Collections.synchronizedNavigableMap((NavigableMap<?, ?>) m);
+		}
+		if (SortedMap.class.isAssignableFrom(type)) {
+			return unmodifiable ? m -> Collections.unmodifiableSortedMap((SortedMap<?, ?>) m) : m -> Collections.synchronizedSortedMap((SortedMap<?, ?>) m);
+		}
+		if (Map.class.isAssignableFrom(type)) {
+			return unmodifiable ? m -> Collections.unmodifiableMap((Map<?, ?>) m) : m -> Collections.synchronizedMap((Map<?, ?>) m);
+		}
+		return unmodifiable ? c -> Collections.unmodifiableCollection((Collection<?>) c) : c -> Collections.synchronizedCollection((Collection<?>) c);
+	}
+
+	/**
+	 * @return 队列的容量上限，没有上限时为Integer.MAX_VALUE
+	 */
+	private static int boundOf(BlockingQueue<?> queue) {
+		return (int) Math.min((long) queue.remainingCapacity() + queue.size(), Integer.MAX_VALUE);
+	}
+
+	private static int size(Object container) {
+		return container instanceof Map ? ((Map<?, ?>) container).size() : ((Collection<?>) container).size();
+	}
+
+	private static Comparator<?> comparator(Object container) {
+		if (container instanceof SortedSet) {
+			return ((SortedSet<?>) container).comparator();
+		}
+		if (container instanceof SortedMap) {
+			return ((SortedMap<?, ?>) container).comparator();
+		}
+		if (container instanceof PriorityQueue) {
+			return ((PriorityQueue<?>) container).comparator();
+		}
+		return ((PriorityBlockingQueue<?>) container).comparator();
+	}
+
+	/**
+	 * @return 构造方法的MethodHandle，不存在或不能访问时返回null
+	 */
+	private static MethodHandle constructor(Class<?> type, Class<?>... parameterTypes) {
+		if (Modifier.isAbstract(type.getModifiers())) {
+			return null;
+		}
+		try {
+			final Constructor<?> constructor = type.getDeclaredConstructor(parameterTypes);
+			constructor.setAccessible(true);
+			return LOOKUP.unreflectConstructor(constructor)
+					.asType(MethodType.methodType(Object.class, parameterTypes));
+		} catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static Object newInstance(MethodHandle constructor, Object... args) {
+		try {
+			return constructor.invokeWithArguments(args);
+		} catch (Throwable e) {
+			throw new IllegalStateException("创建" + constructor.type() + "的实例失败", e);
+		}
+	}
+
+	private static final class PrimitiveArrayPlan extends ClonePlan {
+		@Override
+		Object copy(Object value, int level, DeepCopier copier) {
+			final int length = Array.getLength(value);
+			final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+			return copier.register(value, copy);
+		}
+	}
+
+	private static final class ObjectArrayPlan extends ClonePlan {
+		/**
+		 * 元素类型是不可变的final类时，元素不需要复制
+		 */
+		private final boolean shallow;
+
+		ObjectArrayPlan(Class<?> componentType) {
+			shallow = Modifier.isFinal(componentType.getModifiers()) && isImmutable(componentType);
+		}
+
+		@Override
+		Object copy(Object value, int level, DeepCopier copier) {
+			final Object[] source = (Object[]) value;
+			final Object[] copy = source.clone();
+			final Object registered = copier.register(value, copy);
+			if (registered == copy && !shallow) {
+				copier.copyElements(source, copy, level);
+			}
+			return registered;
+		}
+	}
+
+	private static final class CollectionPlan extends ClonePlan {
+		private final Function<Object, Object> factory;
+		private final UnaryOperator<Object> wrapper;
+
+		@SuppressWarnings("unchecked")
+		CollectionPlan(Class<?> type) {
+			final boolean hashed = Set.class.isAssignableFrom(type);
+			final Function<Object, Object> found = factory(type, hashed);
+			if (found != null) {
+				factory = found;
+			} else if (SortedSet.class.isAssignableFrom(type)) {
+				factory = source -> new TreeSet<>((Comparator<Object>) comparator(source));
+			} else if (Set.class.isAssignableFrom(type)) {
+				factory = source -> new LinkedHashSet<>(hashCapacity(size(source)));
+			} else if (Queue.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type)) {
+				factory = source -> new ArrayDeque<>(Math.max(size(source), 1));
+			} else {
+				factory = source -> new ArrayList<>(size(source));
+			}
+			wrapper = found == null ? wrapper(type) : null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		Object copy(Object value, int level, DeepCopier copier) {
+			final Collection<Object> copy = (Collection<Object>) factory.apply(value);
+			final Object result = wrapper == null ? copy : wrapper.apply(copy);
+			final Object registered = copier.register(value, result);
+			if (registered == result) {
+				copier.copyElements((Collection<?>) value, copy, level);
+			}
+			return registered;
+		}
+	}
+
+	private static final class MapPlan extends ClonePlan {
+		private final Function<Object, Object> factory;
+		private final UnaryOperator<Object> wrapper;
+
+		@SuppressWarnings("unchecked")
+		MapPlan(Class<?> type) {
+			final Function<Object, Object> found = EnumMap.class.isAssignableFrom(type)
+					? source -> ((EnumMap<?, ?>) source).clone() : factory(type, true);
+			if (found != null) {
+				factory = found;
+			} else if (SortedMap.class.isAssignableFrom(type)) {
+				factory = source -> new TreeMap<>((Comparator<Object>) comparator(source));
+			} else {
+				factory = source -> new LinkedHashMap<>(hashCapacity(size(source)));
+			}
+			wrapper = found == null ? wrapper(type) : null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		Object copy(Object value, int level, DeepCopier copier) {
+			final Map<Object, Object> copy = (Map<Object, Object>) factory.apply(value);
+			final Object result = wrapper == null ? copy : wrapper.apply(copy);
+			final Object registered = copier.register(value, result);
+			if (registered == result) {
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+					copy.put(copier.copyValue(entry.getKey(), level), copier.copyValue(entry.getValue(), level));
+				}
+			}
+			return registered;
+		}
+	}
+
+	/**
+	 * 通过无参构造方法创建并逐个复制字段
+	 */
+	private static final class BeanPlan extends ClonePlan {
+		private final MethodHandle constructor;
+		private final FieldCopier[] fields;
+
+		private BeanPlan(MethodHandle constructor, FieldCopier[] fields) {
+			this.constructor = constructor;
+			this.fields = fields;
+		}
+
+		static ClonePlan create(Class<?> type) {
+			final MethodHandle constructor = constructor(type);
+			if (constructor == null) {
+				return unsupported(type, "没有可以访问的无参构造方法", null);
+			}
+			final List<FieldCopier> fields = new ArrayList<>();
+			try {
+				for (Class<?> c = type; c != null && !Object.class.equals(c); c = c.getSuperclass()) {
+					for (Field field : c.getDeclaredFields()) {
+						final int modifiers = field.getModifiers();
+						if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+							field.setAccessible(true);
+							fields.add(new FieldCopier(field));
+						}
+					}
+				}
+			} catch (IllegalAccessException | RuntimeException e) {
+				return unsupported(type, "不能访问字段", e);
+			}
+			return new BeanPlan(constructor, fields.toArray(new FieldCopier[0]));
+		}
+
+		@Override
+		Object copy(Object value, int level, DeepCopier copier) {
+			try {
+				final Object copy = constructor.invokeExact();
+				final Object registered = copier.register(value, copy);
+				if (registered == copy) {
+					for (FieldCopier field : fields) {
+						field.copy(value, copy, level, copier);
+					}
+				}
+				return registered;
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("复制" + value.getClass().getName() + "失败", e);
+			}
+		}
+	}
+
+	/**
+	 * 复制一个字段，基本类型不装箱
+	 */
+	private static final class FieldCopier {
+		private final Class<?> type;
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		/**
+		 * 引用类型的字段是否需要复制
+		 */
+		private final boolean deep;
+
+		FieldCopier(Field field) throws IllegalAccessException {
+			type = field.getType();
+			final Class<?> erased = type.isPrimitive() ? type : Object.class;
+			getter = LOOKUP.unreflectGetter(field).asType(MethodType.methodType(erased, Object.class));
+			setter = LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, erased));
+			deep = !type.isPrimitive() && !(Modifier.isFinal(type.getModifiers()) && isImmutable(type));
+		}
+
+		void copy(Object source, Object target, int level, DeepCopier copier) throws Throwable {
+			if (!type.isPrimitive()) {
+				final Object value = (Object) getter.invokeExact(source);
+				setter.invokeExact(target, deep ? copier.copyValue(value, level) : value);
+			} else if (type == int.class) {
+				setter.invokeExact(target, (int) getter.invokeExact(source));
+			} else if (type == long.class) {
+				setter.invokeExact(target, (long) getter.invokeExact(source));
+			} else if (type == double.class) {
+				setter.invokeExact(target, (double) getter.invokeExact(source));
+			} else if (type == boolean.class) {
+				setter.invokeExact(target, (boolean) getter.invokeExact(source));
+			} else if (type == float.class) {
+				setter.invokeExact(target, (float) getter.invokeExact(source));
+			} else if (type == char.class) {
+				setter.invokeExact(target, (char) getter.invokeExact(source));
+			} else if (type == short.class) {
+				setter.invokeExact(target, (short) getter.invokeExact(source));
+			} else {
+				setter.invokeExact(target, (byte) getter.invokeExact(source));
+			}
+		}
+	}
+}
@@ -1,17 +1,12 @@
 package priv.xiaohu.common.utils.object;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import priv.xiaohu.common.utils.collection.BatchExecutor;
 
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.*;
-import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * @author 窦琪
@@ -19,137 +14,32 @@ import java.util.stream.IntStream;
  */
 public class CopyUtils {
 	
-	private static final Logger LOGGER = LoggerFactory.getLogger(CopyUtils.class);
-	   
-    /**  
-     * 无需进行复制的特殊类型数组  
-     */
-    private final static Class[] NEEDLESS_CLONE_CLASSES = new Class[]{String.class, Boolean.class, Character.class, Byte.class, Short.class,
-        Integer.class,Long.class,Float.class,Double.class,Void.class,Object.class,Class.class    
-    };    
-    /**  
-     * 判断该类型对象是否无需复制  
-     * @param c 指定类型  
-     * @return 如果不需要复制则返回真，否则返回假  
-     */    
-    private static boolean isNeedlessClone(final Class c){
-	    //基本类型
-	    if (c.isPrimitive()) {
-            return true;
-	    }
-	    //是否在无需复制类型数组里
-	    return Arrays.asList(NEEDLESS_CLONE_CLASSES).contains(c);
-    }    
-        
-    /**  
-     * 尝试创建新对象  
-     * @param value 原始对象
-     * @return 新的对象
-     * @throws IllegalAccessException 访问权限异常
-     */    
-    private static Object createObject(Object value) throws IllegalAccessException{    
-            try {    
-                return value.getClass().newInstance();    
-            } catch (InstantiationException e) {
-	            return null;
-            }
-    }    
-        
     /**  
      * 复制对象数据  
+     * <p>由{@link DeepCopier}实现：每个类的复制方式只分析一次，共享和循环引用在副本中保持不变，集合和Map保持原来的类型</p>
+     * <p>没有可以访问的无参构造方法或不能访问字段的对象(例如只有全参构造方法、字段都是final的值对象)不复制，副本中引用原对象；
+     * 需要确认所有对象都被复制时使用{@link #clone(Object, int, boolean)}的严格模式</p>
      * @param value 原始对象  
      * @param level 复制深度。小于0为无限深度，即将深入到最基本类型和Object类级别的数据复制；  
-     * 大于0则按照其值复制到指定深度的数据，等于0则直接返回对象本身而不进行任何复制行为。  
+     * 大于0则按照其值复制到指定深度的数据(每进入一层字段、元素或值减1)，等于0则直接返回对象本身而不进行任何复制行为。  
      * @return 返回复制后的对象
      */
     public static Object clone(Object value, int level) {
-        if(value==null){    
-            return null;
-        }
-	    if (level == 0) {
-		    return value;
-	    }
-	    Class c = value.getClass();
-        if(isNeedlessClone(c)){    
-            return value;    
-        }
-	    final AtomicInteger atomicLevel = new AtomicInteger(level);
-	    //复制新的集合
-	    if (value instanceof Collection) {
-		    value = ((Collection) value).stream().map(o -> clone(o, atomicLevel.decrementAndGet())).collect(Collectors.toList());
-	    }
-	    //复制新的Array
-	    else if (c.isArray()) {
-		    value = copyArray(value, level);
-	    }
-	    //复制新的MAP
-	    else if (value instanceof Map) {
-		    final Set<Entry> set = ((Map) value).entrySet();
-		    value = set.stream().collect(Collectors.toMap(Entry::getKey, Entry::getValue));
-	    }
-        else {
-		    try {
-			    Object tmp = createObject(value);
-			    //无法创建新实例则返回对象本身，没有克隆
-			    if (tmp == null) {
-				    return value;
-			    }
-			    Set<Field> fields = new HashSet<>();
-			    while (c != null && !c.equals(Object.class)) {
-				    fields.addAll(Arrays.asList(c.getDeclaredFields()));
-				    c = c.getSuperclass();
-			    }
-			    for (Field field : fields) {
-				    //仅复制非final字段
-				    if (!Modifier.isFinal(field.getModifiers())) {
-					    field.setAccessible(true);
-					    //深度复制
-					    field.set(tmp, clone(field.get(value), level));
-				    }
-			    }
-			    value = tmp;
-		    } catch (Exception e) {
-			    throw new RuntimeException(e);
-		    }
-	    }
-	    return value;
+	    return DeepCopier.copy(value, level);
+    }
+
+    /**
+     * 复制对象数据，可以选择严格模式
+     * @param value 原始对象
+     * @param level 复制深度，与{@link #clone(Object, int)}相同
+     * @param strict 是否为严格模式：为true时遇到没有可以访问的无参构造方法或不能访问字段的对象抛出IllegalStateException；
+     * 为false时与{@link #clone(Object, int)}相同，副本中引用原对象
+     * @return 返回复制后的对象
+     * @throws IllegalStateException 严格模式下有不能复制的对象
+     */
+    public static Object clone(Object value, int level, boolean strict) {
+        return DeepCopier.copy(value, level, strict);
     }
-	
-	private static Object copyArray(Object value, final int level) {
-		final Class<?> c = value.getClass();
-		//首先判断是否为基本数据类型
-		if (c.equals(int[].class)) {
-			int[] old = (int[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(short[].class)) {
-			short[] old = (short[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(char[].class)) {
-			char[] old = (char[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(float[].class)) {
-			float[] old = (float[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(double[].class)) {
-			double[] old = (double[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(long[].class)) {
-			long[] old = (long[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(boolean[].class)) {
-			boolean[] old = (boolean[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else if (c.equals(byte[].class)) {
-			byte[] old = (byte[]) value;
-			value = Arrays.copyOf(old, old.length);
-		} else {
-			Object[] old = (Object[]) value;
-			Object[] tmp = Arrays.copyOf(old, old.length, old.getClass());
-			IntStream.range(0, old.length).forEach(i -> tmp[i] = clone(old[i], level));
-			value = tmp;
-		}
-		return value;
-	}
 	
 	/**
      * 浅表复制对象  
@@ -169,8 +59,20 @@ public class CopyUtils {
         return clone(value,-1);    
     } 
 
+    /**
+     * 延迟深度复制对象
+     * <p>List、Set和Map返回写时复制的视图(见{@link LazyCopier})：读取访问原集合，第一次写入时才复制这一层，
+     * 只读的防御性复制几乎没有开销；其他对象与{@link #deepClone(Object)}相同</p>
+     * @param value 原始对象，返回的视图被写入之前不能修改
+     * @return 复制后的对象或视图
+     */
+    public static Object lazyClone(Object value) {
+        return LazyCopier.copy(value);
+    }
+
     /**
      * 将一个对象转换为另一个对象
+     * <p>每对(原始类, 目标类)的字段映射只在第一次转换时查找并缓存，见{@link BeanMappingPlan}</p>
      * @param <T1> 要转换的对象
      * @param <T2> 转换后的类
      * @param orimodel 要转换的对象
@@ -178,120 +80,58 @@ public class CopyUtils {
      * @return 转换后的对象
      */
     public static  <T1,T2> T2 convertBean(T1 orimodel, T2 newObj) {
-	    //要转换的字段集合
-	    List<Field> fieldlist = new ArrayList<>();
-	    //循环获取要转换的字段,包括父类的字段
-	    for (Class castClass = newObj.getClass(); castClass != null && !Object.class.equals(castClass); castClass = (Class<T2>) castClass.getSuperclass()) {
-		    fieldlist.addAll(Arrays.asList(castClass.getDeclaredFields()));
-	    }
-	 
 	    // ZJ @ 2019-05-10 修改后的方法支持非标准的get,set属性
-	    fieldlist.stream()
-			    .filter(field -> !(setVal1(field, orimodel, newObj) || setVal2(field, orimodel, newObj) || setVal3(field, orimodel, newObj)))
-			    .forEach(field -> LOGGER.error("{} ==> {} 复制值 {} 失败!\r\n", orimodel.getClass().getName(), newObj.getClass().getName(), field.getName()));
-	    return newObj;
+	    return BeanMappingPlan.of(orimodel.getClass(), newObj.getClass()).map(orimodel, newObj);
     }
 
     /**
-     *
-     * @param field 要设置值的属性
-     * @param orimodel 原始对象
-     * @param returnModel 转换后的对象
-     * @return 设置是否成功
+     * 批量转换对象
+     * <p>字段映射只查找一次，连续的元素类型相同时直接复用；结果List按输入大小预分配</p>
+     * @param <S> 要转换的对象
+     * @param <T> 转换后的类
+     * @param sources 要转换的对象，null元素转换为null
+     * @param factory 创建转换后的对象，例如Dto::new
+     * @return 转换后的对象，顺序与输入一致
      */
-    private static <T1, T2> boolean setVal1(Field field, T1 orimodel, T2 returnModel) {
-	    boolean b = false;
-
-		try {
-	        PropertyDescriptor getpd = new PropertyDescriptor(field.getName(), orimodel.getClass());
-	        PropertyDescriptor setpd=new PropertyDescriptor(field.getName(), returnModel.getClass());
-	
-	        Method getMethod = getpd.getReadMethod();
-	        Object transValue = getMethod.invoke(orimodel);
-	        Method setMethod = setpd.getWriteMethod();
-	        setMethod.invoke(returnModel, transValue);
-	        b = true;
-		} catch (Exception e) {
-//			throw new RuntimeException(e);不可抛出
-		}
-        return b;
-	}
+    public static <S, T> List<T> convertAll(Collection<S> sources, Supplier<T> factory) {
+        return convertAll(sources, new BeanMappingPlan.Converter<>(factory));
+    }
 
     /**
-     *
-     * @param field 要设置值的属性
-     * @param orimodel 原始对象
-     * @param returnModel 转换后的对象
-     * @return 设置是否成功
+     * 在执行器中分组并行地批量转换对象
+     * <p>所有分组共享同一个转换函数，字段映射只查找一次</p>
+     * @param <S> 要转换的对象
+     * @param <T> 转换后的类
+     * @param sources 要转换的对象，null元素转换为null
+     * @param factory 创建转换后的对象，需要是线程安全的
+     * @param executor 分组执行器，始终按分组顺序合并结果，不受{@link BatchExecutor#ordered(boolean)}的设置影响
+     * @param batchSize 每组的大小
+     * @return 转换后的对象，顺序与sources一致
+     * @throws BatchExecutor.BatchExecutionException 有分组转换失败
      */
-    private static <T1, T2> boolean setVal2(Field field, T1 orimodel, T2 returnModel) {
-    	boolean b = false;
+    public static <S, T> List<T> convertAll(Collection<S> sources, Supplier<T> factory, BatchExecutor executor, int batchSize) {
+        final BeanMappingPlan.Converter<S, T> converter = new BeanMappingPlan.Converter<>(factory);
+        return executor.ordered(true).executeAndFlatten(sources, batchSize, batch -> convertAll(batch, converter));
+    }
 
-    	try {
-	    	String xetter = field.getName().substring(0,1).toUpperCase() + field.getName().substring(1);
-			Method getMethod = orimodel.getClass().getMethod("get" + xetter);
-			Object transValue = getMethod.invoke(orimodel);
-	
-			String setter = "set" + xetter;
-			Method mySetter = null;
-			try {
-				mySetter = returnModel.getClass().getMethod(setter, field.getType());
-				mySetter.invoke(returnModel, transValue);
-				b = true;
-			} catch (NoSuchMethodException e) {
-				// setter: Long-->long Integer-->int
-				if( field.getType().equals(Long.class)){
-					mySetter = returnModel.getClass().getMethod(setter, long.class);
-				}
-				if( field.getType().equals(Integer.class)){
-					mySetter = returnModel.getClass().getMethod(setter, int.class);
-				}
-				if (mySetter != null) {
-					mySetter.invoke(returnModel, transValue);
-					b = true;
-				}
-			}
-	    } catch (Exception e) {
-//		    throw new RuntimeException(e);不可抛出
-		}
-    	return b;
+    /**
+     * 转换流中的对象，延迟执行
+     * <p>字段映射只查找一次；原来的流是并行流时并行转换</p>
+     * @param <S> 要转换的对象
+     * @param <T> 转换后的类
+     * @param sources 要转换的对象，null元素转换为null
+     * @param factory 创建转换后的对象，并行流时需要是线程安全的
+     * @return 转换后的对象的流
+     */
+    public static <S, T> Stream<T> convertAll(Stream<S> sources, Supplier<T> factory) {
+        return sources.map(new BeanMappingPlan.Converter<>(factory));
     }
-	
-	/**
-	 * @param field
-	 * 		要设置值的属性
-	 * @param orimodel
-	 * 		原始对象
-	 * @param returnModel
-	 * 		转换后的对象
-	 * @return 设置是否成功
-	 */
-    private static <T1, T2> boolean setVal3(Field field, T1 orimodel, T2 returnModel) {
-    	boolean b = false;
-    	try {
-	    	String xetter = field.getName();
-			Method getMethod = orimodel.getClass().getMethod("get" + xetter);
-			Object transValue = getMethod.invoke(orimodel);
-	
-			String setter = "set" + xetter;
-			Method mySetter = null;
-			try {
-				mySetter = returnModel.getClass().getMethod(setter, field.getType());
-				mySetter.invoke(returnModel, transValue);
-				b = true;
-			}catch(NoSuchMethodException e){// setter: Long-->long Integer-->int
-				if( field.getType().equals(Long.class)){
-					mySetter = returnModel.getClass().getMethod(setter, long.class);
-				}
-				if( field.getType().equals(Integer.class)){
-					mySetter = returnModel.getClass().getMethod(setter, int.class);
-				}
-				Objects.requireNonNull(mySetter).invoke(returnModel, transValue);
-				b = true;
-			}
-	    } catch (Exception e) {
-//		    throw new RuntimeException(e);不可抛出
-	    }
-    	return b;
+
+    private static <S, T> List<T> convertAll(Collection<S> sources, BeanMappingPlan.Converter<S, T> converter) {
+        final List<T> result = new ArrayList<>(sources.size());
+        for (S source : sources) {
+            result.add(converter.apply(source));
+        }
+        return result;
     }
 }
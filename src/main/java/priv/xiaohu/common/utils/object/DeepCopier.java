@@ -0,0 +1,281 @@
+package priv.xiaohu.common.utils.object;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * <p>按层级复制对象图，{@link CopyUtils#clone(Object, int)}和{@link CopyUtils#deepClone(Object)}的实现</p>
+ * <p>每个类的复制方式({@link ClonePlan})只分析一次：不可变类型直接返回，数组按元素类型选择整体复制或逐个复制，
+ * 集合和Map保持原来的类型并预分配容量，Date、Calendar等JDK中的Cloneable类调用clone()，
+ * 其他对象通过无参构造方法创建后复制字段，不能创建或不能访问字段时返回原对象，严格模式下抛出IllegalStateException</p>
+ * <p>一次复制中已复制的对象按引用记录，同一个对象只复制一次：多处共享的引用在副本中仍然共享，循环引用不会导致栈溢出</p>
+ * <p>复制深度每进入一层减1：为1时只复制对象本身，字段、元素和值引用原来的对象；小于0时复制整个对象图；为0时返回原对象</p>
+ * <p>元素个数达到阈值的对象数组和支持随机访问的List在ForkJoinPool中按下标切分并行复制，结果直接写入预分配的数组；
+ * 默认使用本类独立的ForkJoinPool，不占用公共的ForkJoinPool.commonPool()，
+ * 并行度默认为CPU核数的一半，可以通过系统属性{@value #PARALLELISM_PROPERTY}修改，为1时不并行；
+ * 阈值默认为{@value #DEFAULT_THRESHOLD}，可以通过系统属性{@value #THRESHOLD_PROPERTY}修改。
+ * 并行复制时一个对象的副本登记后可能在内容复制完成之前被其他线程引用，
+ * 因此副本中以可变对象为元素的HashSet、HashMap的键或TreeSet的元素，其hashCode或比较结果可能基于未复制完成的内容</p>
+ *
+ * @author zxh
+ */
+public final class DeepCopier {
+
+	public static final String PARALLELISM_PROPERTY = "priv.xiaohu.common.utils.object.DeepCopier.parallelism";
+	public static final String THRESHOLD_PROPERTY = "priv.xiaohu.common.utils.object.DeepCopier.threshold";
+	public static final int DEFAULT_THRESHOLD = 10000;
+
+	private static final int MIN_CHUNK = 1024;
+	private static final int STRIPES = 64;
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+	private final boolean strict;
+
+	/**
+	 * 本次复制中已复制的对象到副本，开始并行复制后改为按identityHashCode分段、分别加锁的stripes
+	 */
+	private final Map<Object, Object> copies = new IdentityHashMap<>();
+	private Map<Object, Object>[] stripes;
+
+	private DeepCopier(ForkJoinPool pool, int threshold, boolean strict) {
+		this.pool = pool;
+		this.threshold = threshold;
+		this.strict = strict;
+	}
+
+	/**
+	 * 复制整个对象图
+	 */
+	public static <T> T deepCopy(T value) {
+		return copy(value, -1);
+	}
+
+	/**
+	 * @param level 复制深度，小于0为无限深度，等于0时返回原对象
+	 */
+	public static <T> T copy(T value, int level) {
+		return copy(value, level, false);
+	}
+
+	/**
+	 * @param level  复制深度，小于0为无限深度，等于0时返回原对象
+	 * @param strict 是否为严格模式，为true时遇到不能复制的对象抛出IllegalStateException，为false时返回原对象
+	 */
+	public static <T> T copy(T value, int level, boolean strict) {
+		return copy(value, level, DefaultPool.POOL, DefaultPool.THRESHOLD, strict);
+	}
+
+	/**
+	 * @param level     复制深度，小于0为无限深度，等于0时返回原对象
+	 * @param pool      并行复制使用的线程池，为null时不并行
+	 * @param threshold 并行复制的最小元素个数
+	 */
+	public static <T> T copy(T value, int level, ForkJoinPool pool, int threshold) {
+		return copy(value, level, pool, threshold, false);
+	}
+
+	/**
+	 * @param level     复制深度，小于0为无限深度，等于0时返回原对象
+	 * @param pool      并行复制使用的线程池，为null时不并行
+	 * @param threshold 并行复制的最小元素个数
+	 * @param strict    是否为严格模式，为true时遇到不能复制的对象抛出IllegalStateException，为false时返回原对象
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copy(T value, int level, ForkJoinPool pool, int threshold, boolean strict) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("并行复制的阈值必须大于0：" + threshold);
+		}
+		if (value == null || level == 0 || ClonePlan.of(value.getClass()).isImmutable()) {
+			return value;
+		}
+		return (T) new DeepCopier(pool, threshold, strict).copyValue(value, level);
+	}
+
+	/**
+	 * 不并行复制的实例，用于多次调用{@link #copyValue(Object, int)}时共享已复制的对象
+	 */
+	static DeepCopier sequential() {
+		return new DeepCopier(null, DEFAULT_THRESHOLD, false);
+	}
+
+	/**
+	 * @return 遇到不能复制的对象时是否抛出异常
+	 */
+	boolean isStrict() {
+		return strict;
+	}
+
+	/**
+	 * @param level 包括value这一层在内的复制深度
+	 */
+	Object copyValue(Object value, int level) {
+		if (value == null || level == 0) {
+			return value;
+		}
+		final ClonePlan plan = ClonePlan.of(value.getClass());
+		if (plan.isImmutable()) {
+			return value;
+		}
+		final Object copied = copied(value);
+		if (copied == null) {
+			return plan.copy(value, level < 0 ? level : level - 1, this);
+		}
+		if (!LazyCopier.isView(copied)) {
+			return copied;
+		}
+		// 延迟复制的视图不保持原来的类型，对象图中需要另外复制，之后恢复登记的视图
+		final Object copy = plan.copy(value, level < 0 ? level : level - 1, this);
+		register(value, copied);
+		return copy;
+	}
+
+	/**
+	 * @return 本次复制中已登记的副本，没有时返回null
+	 */
+	Object copied(Object value) {
+		if (stripes == null) {
+			return copies.get(value);
+		}
+		final Map<Object, Object> stripe = stripe(value);
+		synchronized (stripe) {
+			return stripe.get(value);
+		}
+	}
+
+	/**
+	 * 登记副本，必须在复制内容之前调用
+	 *
+	 * @return 已登记的副本，并行复制时可能是其他线程先登记的副本，此时不应再复制内容
+	 */
+	Object register(Object value, Object copy) {
+		if (stripes == null) {
+			copies.put(value, copy);
+			return copy;
+		}
+		final Map<Object, Object> stripe = stripe(value);
+		synchronized (stripe) {
+			final Object registered = stripe.putIfAbsent(value, copy);
+			return registered == null ? copy : registered;
+		}
+	}
+
+	private Map<Object, Object> stripe(Object value) {
+		return stripes[System.identityHashCode(value) & (STRIPES - 1)];
+	}
+
+	void copyElements(Object[] source, Object[] target, int level) {
+		if (isParallel(source.length)) {
+			fork(i -> source[i], target, level);
+			return;
+		}
+		for (int i = 0; i < source.length; i++) {
+			target[i] = copyValue(source[i], level);
+		}
+	}
+
+	void copyElements(Collection<?> source, Collection<Object> target, int level) {
+		if (source instanceof List && source instanceof RandomAccess && isParallel(source.size())) {
+			final List<?> list = (List<?>) source;
+			final Object[] buffer = new Object[list.size()];
+			fork(list::get, buffer, level);
+			target.addAll(Arrays.asList(buffer));
+			return;
+		}
+		for (Object element : source) {
+			target.add(copyValue(element, level));
+		}
+	}
+
+	private boolean isParallel(int size) {
+		return pool != null && size >= threshold;
+	}
+
+	/**
+	 * 在pool中并行复制，第一次并行前只有调用线程访问copies，把已登记的副本分配到stripes中
+	 */
+	@SuppressWarnings("unchecked")
+	private void fork(IntFunction<?> source, Object[] target, int level) {
+		if (stripes == null) {
+			final Map<Object, Object>[] created = (Map<Object, Object>[]) new Map<?, ?>[STRIPES];
+			for (int i = 0; i < STRIPES; i++) {
+				created[i] = new IdentityHashMap<>();
+			}
+			for (Map.Entry<Object, Object> entry : copies.entrySet()) {
+				created[System.identityHashCode(entry.getKey()) & (STRIPES - 1)].put(entry.getKey(), entry.getValue());
+			}
+			copies.clear();
+			stripes = created;
+		}
+		final int chunk = Math.max(target.length / (pool.getParallelism() * 4), MIN_CHUNK);
+		final CopyTask task = new CopyTask(source, target, 0, target.length, chunk, level);
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	private final class CopyTask extends RecursiveAction {
+		private static final long serialVersionUID = 2953067217318464615L;
+
+		private final IntFunction<?> source;
+		private final Object[] target;
+		private final int from;
+		private final int to;
+		private final int chunk;
+		private final int level;
+
+		private CopyTask(IntFunction<?> source, Object[] target, int from, int to, int chunk, int level) {
+			this.source = source;
+			this.target = target;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+			this.level = level;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunk) {
+				for (int i = from; i < to; i++) {
+					target[i] = copyValue(source.apply(i), level);
+				}
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new CopyTask(source, target, from, mid, chunk, level),
+					new CopyTask(source, target, mid, to, chunk, level));
+		}
+	}
+
+	/**
+	 * 第一次使用默认配置复制时才创建线程池，并行度为1时不创建
+	 */
+	private static final class DefaultPool {
+		static final int THRESHOLD = Math.max(Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD), 1);
+		static final ForkJoinPool POOL = create(Integer.getInteger(PARALLELISM_PROPERTY,
+				Math.max(Runtime.getRuntime().availableProcessors() / 2, 1)));
+
+		private static ForkJoinPool create(int parallelism) {
+			if (parallelism <= 1) {
+				return null;
+			}
+			return new ForkJoinPool(Math.min(parallelism, 0x7fff), pool -> {
+				final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("deep-copier-" + thread.getPoolIndex());
+				thread.setDaemon(true);
+				return thread;
+			}, null, false);
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package priv.xiaohu.common.utils.object;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * <p>List、Set和Map的延迟深复制：返回写时复制的视图，读取直接访问原集合，第一次写入时才复制这一层</p>
+ * <ul>
+ * <li>读取到的元素、键和值也是副本：List、Set和Map同样返回延迟复制的视图，
+ * 其他可变对象在第一次读取时通过{@link DeepCopier}完整复制，不可变对象直接返回</li>
+ * <li>视图和完整复制的副本都登记在同一个{@link DeepCopier}中，同一个原对象在一次复制中只对应一个副本，
+ * 共享和循环引用在副本中保持不变；只有已经返回视图的集合又被完整复制的对象引用时，
+ * 为保持字段和数组元素原来的类型会另外复制一次</li>
+ * <li>第一次写入时把这一层的元素替换为副本，复制到ArrayList、LinkedHashSet或LinkedHashMap
+ * (有序的Set和Map使用原来的比较器创建TreeSet、TreeMap)，之后不再引用原集合；下一层仍然是延迟复制的视图</li>
+ * </ul>
+ * <p>视图只实现List、Set、Map接口，不保持原来的类型；需要原来的类型时使用{@link DeepCopier#deepCopy(Object)}。
+ * 写入之前副本读取的是原集合，原集合在此期间不能修改。和ArrayList等集合一样，写入不是线程安全的</p>
+ * <p>写入之前Set和Map按读取到的副本对应的原对象在原集合中查找，以其他可变对象为参数的contains、get、remove等方法会先复制这一层</p>
+ *
+ * @author zxh
+ */
+public final class LazyCopier {
+
+	/**
+	 * 查找的参数不是读取到的副本，不能直接在原集合中查找
+	 */
+	private static final Object UNKNOWN = new Object();
+
+	/**
+	 * 原对象到副本或视图的登记表，与完整复制共用
+	 */
+	private final DeepCopier copier = DeepCopier.sequential();
+	/**
+	 * 读取到的副本或视图到原对象，写入之前按原对象在原集合中查找
+	 */
+	private final Map<Object, Object> sources = new IdentityHashMap<>();
+
+	private LazyCopier() {
+	}
+
+	/**
+	 * List、Set和Map返回延迟复制的视图，其他对象完整复制
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T copy(T value) {
+		return (T) new LazyCopier().view(value);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> List<E> copyOf(List<E> list) {
+		return (List<E>) new LazyCopier().view(list);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> Set<E> copyOf(Set<E> set) {
+		return (Set<E>) new LazyCopier().view(set);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> Map<K, V> copyOf(Map<K, V> map) {
+		return (Map<K, V>) new LazyCopier().view(map);
+	}
+
+	/**
+	 * 多个视图可能被同时读取，创建副本时加锁
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private synchronized Object view(Object value) {
+		if (value == null || ClonePlan.of(value.getClass()).isImmutable()) {
+			return value;
+		}
+		Object view = copier.copied(value);
+		if (view == null) {
+			if (value instanceof List) {
+				view = copier.register(value, new LazyList(this, (List) value));
+			} else if (value instanceof Set) {
+				view = copier.register(value, new LazySet(this, (Set) value));
+			} else if (value instanceof Map) {
+				view = copier.register(value, new LazyMap(this, (Map) value));
+			} else {
+				view = copier.copyValue(value, -1);
+			}
+		}
+		sources.put(view, value);
+		return view;
+	}
+
+	/**
+	 * @return 在原集合中查找value时使用的参数：读取到的副本换成原对象，不可变对象不变，
+	 * 其他对象返回{@link #UNKNOWN}，需要先复制这一层再查找
+	 */
+	private synchronized Object sourceOf(Object value) {
+		if (value == null || ClonePlan.of(value.getClass()).isImmutable()) {
+			return value;
+		}
+		final Object source = sources.get(value);
+		return source != null ? source : UNKNOWN;
+	}
+
+	/**
+	 * @return value是否为延迟复制的视图，{@link DeepCopier}据此区分登记的视图和保持原类型的副本
+	 */
+	static boolean isView(Object value) {
+		return value instanceof LazyList || value instanceof LazySet || value instanceof LazyMap;
+	}
+
+	private static final class LazyList<E> extends AbstractList<E> {
+		private final LazyCopier copier;
+		private List<E> source;
+		private List<E> copy;
+
+		LazyList(LazyCopier copier, List<E> source) {
+			this.copier = copier;
+			this.source = source;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E get(int index) {
+			return copy != null ? copy.get(index) : (E) copier.view(source.get(index));
+		}
+
+		@Override
+		public int size() {
+			return copy != null ? copy.size() : source.size();
+		}
+
+		@Override
+		public E set(int index, E element) {
+			return written().set(index, element);
+		}
+
+		@Override
+		public void add(int index, E element) {
+			written().add(index, element);
+			modCount++;
+		}
+
+		@Override
+		public E remove(int index) {
+			final E removed = written().remove(index);
+			modCount++;
+			return removed;
+		}
+
+		@Override
+		public void clear() {
+			if (copy == null) {
+				copy = new ArrayList<>();
+				source = null;
+			} else {
+				copy.clear();
+			}
+			modCount++;
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<E> written() {
+			if (copy == null) {
+				final List<E> created = new ArrayList<>(source.size());
+				for (E element : source) {
+					created.add((E) copier.view(element));
+				}
+				copy = created;
+				source = null;
+			}
+			return copy;
+		}
+	}
+
+	private static final class LazySet<E> extends AbstractSet<E> {
+		private final LazyCopier copier;
+		private Set<E> source;
+		private Set<E> copy;
+
+		LazySet(LazyCopier copier, Set<E> source) {
+			this.copier = copier;
+			this.source = source;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			if (copy != null) {
+				return copy.iterator();
+			}
+			final Iterator<E> iterator = source.iterator();
+			return new Iterator<E>() {
+				private E last;
+				private boolean removable;
+
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public E next() {
+					last = (E) copier.view(iterator.next());
+					removable = true;
+					return last;
+				}
+
+				@Override
+				public void remove() {
+					if (!removable) {
+						throw new IllegalStateException("没有可以删除的元素");
+					}
+					written().remove(last);
+					removable = false;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return copy != null ? copy.size() : source.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			final Object key = lookup(o);
+			return key != UNKNOWN ? source.contains(key) : written().contains(o);
+		}
+
+		@Override
+		public boolean add(E e) {
+			final Object key = lookup(e);
+			return (key == UNKNOWN || !source.contains(key)) && written().add(e);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			final Object key = lookup(o);
+			return (key == UNKNOWN || source.contains(key)) && written().remove(o);
+		}
+
+		/**
+		 * @return 写入之前在原集合中查找o使用的参数，已经写入或需要先写入时返回UNKNOWN
+		 */
+		private Object lookup(Object o) {
+			return copy != null ? UNKNOWN : copier.sourceOf(o);
+		}
+
+		@Override
+		public void clear() {
+			if (copy == null) {
+				copy = created(0);
+				source = null;
+			} else {
+				copy.clear();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private Set<E> written() {
+			if (copy == null) {
+				final Set<E> created = created(source.size());
+				for (E element : source) {
+					created.add((E) copier.view(element));
+				}
+				copy = created;
+				source = null;
+			}
+			return copy;
+		}
+
+		private Set<E> created(int size) {
+			return source instanceof SortedSet ? new TreeSet<>(((SortedSet<E>) source).comparator())
+					: new LinkedHashSet<>(ClonePlan.hashCapacity(size));
+		}
+	}
+
+	private static final class LazyMap<K, V> extends AbstractMap<K, V> {
+		private final LazyCopier copier;
+		private Map<K, V> source;
+		private Map<K, V> copy;
+		private Set<Map.Entry<K, V>> entrySet;
+
+		LazyMap(LazyCopier copier, Map<K, V> source) {
+			this.copier = copier;
+			this.source = source;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(Object key) {
+			final Object sourceKey = lookup(key);
+			return sourceKey != UNKNOWN ? (V) copier.view(source.get(sourceKey)) : written().get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			final Object sourceKey = lookup(key);
+			return sourceKey != UNKNOWN ? source.containsKey(sourceKey) : written().containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return copy != null ? copy.size() : source.size();
+		}
+
+		@Override
+		public V put(K key, V value) {
+			return written().put(key, value);
+		}
+
+		@Override
+		public V remove(Object key) {
+			final Object sourceKey = lookup(key);
+			return sourceKey == UNKNOWN || source.containsKey(sourceKey) ? written().remove(key) : null;
+		}
+
+		/**
+		 * @return 写入之前在原Map中查找key使用的参数，已经写入或需要先写入时返回UNKNOWN
+		 */
+		private Object lookup(Object key) {
+			return copy != null ? UNKNOWN : copier.sourceOf(key);
+		}
+
+		@Override
+		public void clear() {
+			if (copy == null) {
+				copy = created(0);
+				source = null;
+			} else {
+				copy.clear();
+			}
+		}
+
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			if (entrySet == null) {
+				entrySet = new AbstractSet<Map.Entry<K, V>>() {
+					@Override
+					public Iterator<Map.Entry<K, V>> iterator() {
+						return copy != null ? copy.entrySet().iterator() : new EntryIterator();
+					}
+
+					@Override
+					public int size() {
+						return LazyMap.this.size();
+					}
+				};
+			}
+			return entrySet;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Map<K, V> written() {
+			if (copy == null) {
+				final Map<K, V> created = created(source.size());
+				for (Map.Entry<K, V> entry : source.entrySet()) {
+					created.put((K) copier.view(entry.getKey()), (V) copier.view(entry.getValue()));
+				}
+				copy = created;
+				source = null;
+			}
+			return copy;
+		}
+
+		private Map<K, V> created(int size) {
+			return source instanceof SortedMap ? new TreeMap<>(((SortedMap<K, V>) source).comparator())
+					: new LinkedHashMap<>(ClonePlan.hashCapacity(size));
+		}
+
+		/**
+		 * 写入之前遍历原Map，键和值替换为副本；通过迭代器或Entry修改时先复制这一层
+		 */
+		private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+			private final Iterator<Map.Entry<K, V>> iterator = source.entrySet().iterator();
+			private K last;
+			private boolean removable;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public Map.Entry<K, V> next() {
+				final Map.Entry<K, V> entry = iterator.next();
+				last = (K) copier.view(entry.getKey());
+				removable = true;
+				return new ViewEntry(last, (V) copier.view(entry.getValue()));
+			}
+
+			@Override
+			public void remove() {
+				if (!removable) {
+					throw new IllegalStateException("没有可以删除的元素");
+				}
+				written().remove(last);
+				removable = false;
+			}
+		}
+
+		private final class ViewEntry extends AbstractMap.SimpleEntry<K, V> {
+			private static final long serialVersionUID = -2402167781530312950L;
+
+			ViewEntry(K key, V value) {
+				super(key, value);
+			}
+
+			@Override
+			public V setValue(V value) {
+				written().put(getKey(), value);
+				return super.setValue(value);
+			}
+		}
+	}
+}
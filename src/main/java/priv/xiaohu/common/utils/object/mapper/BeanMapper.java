@@ -0,0 +1,36 @@
+package priv.xiaohu.common.utils.object.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记在接口或抽象类上，由processor模块的BeanMapperProcessor在编译时生成实现类
+ * <p>每个抽象方法声明一对(原始类, 目标类)，形式为{@code T map(S source)}(创建新的目标对象)
+ * 或{@code T/void map(S source, T target)}(复制到已有的目标对象)。
+ * 生成的实现类直接调用getter和setter，与{@link priv.xiaohu.common.utils.object.CopyUtils#convertBean(Object, Object)}不同，
+ * 目标类中找不到getter或类型不匹配的属性在编译时报错，而不是在运行时记录日志</p>
+ * <pre>
+ * &#64;BeanMapper(ignore = "password")
+ * public interface UserMapper {
+ *     UserDTO toDto(User user);
+ * }
+ *
+ * UserDTO dto = Mappers.getMapper(UserMapper.class).toDto(user);
+ * </pre>
+ * <p>实现类与接口在同一个包中，名称为接口名(内部类用_连接外部类名)加Impl，通过{@link Mappers#getMapper(Class)}获取</p>
+ *
+ * @author zxh
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface BeanMapper {
+
+	/**
+	 * @return 不需要复制的目标属性名
+	 */
+	String[] ignore() default {};
+}
@@ -0,0 +1,48 @@
+package priv.xiaohu.common.utils.object.mapper;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * 获取编译时为{@link BeanMapper}生成的映射类实例
+ *
+ * @author zxh
+ */
+public class Mappers {
+
+	private static final ClassValue<Object> MAPPERS = new ClassValue<Object>() {
+		@Override
+		protected Object computeValue(Class<?> type) {
+			final String name = implementationName(type);
+			try {
+				return Class.forName(name, true, type.getClassLoader()).getDeclaredConstructor().newInstance();
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException("没有找到" + type.getName() + "的映射类" + name + "，请确认编译时启用了BeanMapperProcessor", e);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("无法创建映射类" + name, e);
+			}
+		}
+	};
+
+	private Mappers() {
+	}
+
+	/**
+	 * @param type 标记了{@link BeanMapper}的接口或抽象类
+	 * @return 生成的映射类的实例，同一个类型总是返回同一个实例
+	 */
+	public static <M> M getMapper(Class<M> type) {
+		if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+			throw new IllegalArgumentException(type.getName() + "不是接口或抽象类");
+		}
+		return type.cast(MAPPERS.get(type));
+	}
+
+	/**
+	 * @return 与BeanMapperProcessor生成的类名一致：包名.外部类名_内部类名Impl
+	 */
+	static String implementationName(Class<?> type) {
+		final Package pkg = type.getPackage();
+		final String prefix = pkg == null || pkg.getName().isEmpty() ? "" : pkg.getName() + ".";
+		return prefix + type.getName().substring(prefix.length()).replace('$', '_') + "Impl";
+	}
+}